@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import Framework.Models.Log.NonRedundantLog;
+
+// E-step of the EM algorithm: computes the (scaled) forward and backward messages of all unique cases and accumulates
+// the numerators of the parameter updates. cases are grouped by length and processed in batches in lockstep,
+// using the products obsmat[k][x] * transcube[k][x][j] precomputed once per iteration.
+// message buffers are shared by all batches up to a fixed size, longer (outlier) cases get buffers sized on demand
+public class BatchedForwardBackward {
+
+    // maximum number of cases processed in lockstep
+    private static final int MAX_BATCH_SIZE = 64;
+    // size (in doubles) of the shared forward and backward buffers
+    private static final int BUFFER_SIZE = 1 << 15;
+
+    private NonRedundantLog log;
+    private int numberOfStates;
+    private int numberOfSymbols;
+    // unique cases sorted by length (stable) and the start of each run of equal lengths in that order
+    private int[] cases;
+    private int[] runStarts;
+    // shared message buffers (case, position, state) and scaling constants (case, position)
+    private double[] forward;
+    private double[] backward;
+    private double[] constants;
+    // weights[x][k * numberOfStates + j] = obsmat[k][x] * transcube[k][x][j]
+    private double[][] weights;
+    // emission probabilities of the final symbol of a case, used as backward message after the last position
+    private double[] finalEmission;
+
+
+    public BatchedForwardBackward(NonRedundantLog log, int numberOfStates) {
+        this.log = log;
+        this.numberOfStates = numberOfStates;
+        this.numberOfSymbols = log.getNumberOfUniqueSymbols();
+        this.weights = new double[this.numberOfSymbols][numberOfStates * numberOfStates];
+        this.finalEmission = new double[numberOfStates];
+
+        // counting sort of the unique cases by length
+        int numberOfUniqueCases = log.getNumberOfUniqueCases();
+        int[] lengthCounts = new int[log.getLengthOfLongestCase() + 2];
+        for (int c = 0; c < numberOfUniqueCases; c++)
+            lengthCounts[log.getLengthOfCase(c) + 1]++;
+        for (int l = 1; l < lengthCounts.length; l++)
+            lengthCounts[l] += lengthCounts[l - 1];
+        this.cases = new int[numberOfUniqueCases];
+        for (int c = 0; c < numberOfUniqueCases; c++)
+            this.cases[lengthCounts[log.getLengthOfCase(c)]++] = c;
+
+        ArrayList<Integer> starts = new ArrayList<Integer>();
+        for (int i = 0; i < numberOfUniqueCases; i++)
+            if ((i == 0) || (log.getLengthOfCase(this.cases[i]) != log.getLengthOfCase(this.cases[i - 1])))
+                starts.add(i);
+        starts.add(numberOfUniqueCases);
+        this.runStarts = new int[starts.size()];
+        for (int i = 0; i < starts.size(); i++)
+            this.runStarts[i] = starts.get(i);
+    }
+
+    // returns the log-likelihood of all cases (weighted by multiplicity), computed by the forward messages only
+    public double logLikelihood(double[] prior, double[][] obsmat, double[][][] transcube) {
+        return this.accumulate(prior, obsmat, transcube, null, null, null);
+    }
+
+    // adds the expected counts of all cases (weighted by multiplicity) to the numerators and returns the log-likelihood
+    // if the numerators are null, the backward messages are skipped
+    public double accumulate(double[] prior, double[][] obsmat, double[][][] transcube, double[] priorNumerator, double[][] obsmatNumerator, double[][][] transcubeNumerator) {
+        int K = this.numberOfStates;
+        for (int x = 0; x < this.numberOfSymbols; x++)
+            for (int k = 0; k < K; k++)
+                for (int j = 0; j < K; j++)
+                    this.weights[x][k * K + j] = obsmat[k][x] * transcube[k][x][j];
+
+        double loglik = 0.0;
+        for (int r = 0; r + 1 < this.runStarts.length; r++) {
+            int N = this.log.getLengthOfCase(this.cases[this.runStarts[r]]);
+            if (N < 2) {
+                // cases consisting of the termination symbol only have no transition, they are left out
+                continue;
+            }
+
+            int messagesPerCase = (N - 1) * K;
+            int batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, BUFFER_SIZE / messagesPerCase));
+            for (int from = this.runStarts[r]; from < this.runStarts[r + 1]; from += batchSize) {
+                int to = Math.min(from + batchSize, this.runStarts[r + 1]);
+                loglik += this.accumulateBatch(from, to, N, prior, obsmat, priorNumerator, obsmatNumerator, transcubeNumerator);
+            }
+        }
+        return loglik;
+    }
+
+    // forward-backward for the cases from..to-1 (in sorted order), all of length N
+    private double accumulateBatch(int from, int to, int N, double[] prior, double[][] obsmat, double[] priorNumerator, double[][] obsmatNumerator, double[][][] transcubeNumerator) {
+        int K = this.numberOfStates;
+        int B = to - from;
+        int M = N - 1; // number of messages per case
+        int size = B * M * K;
+
+        // shared buffers, or buffers of their own for outliers
+        double[] f;
+        double[] g;
+        double[] scale;
+        if (size <= BUFFER_SIZE) {
+            if (this.forward == null) {
+                this.forward = new double[BUFFER_SIZE];
+                this.backward = new double[BUFFER_SIZE];
+                this.constants = new double[BUFFER_SIZE];
+            }
+            f = this.forward;
+            g = this.backward;
+            scale = this.constants;
+        } else {
+            f = new double[size];
+            g = new double[size];
+            scale = new double[B * M];
+        }
+
+        int[] caseNumbers = Arrays.copyOfRange(this.cases, from, to);
+        double[] multiplicities = new double[B];
+        for (int b = 0; b < B; b++)
+            multiplicities[b] = this.log.getCaseMultiplicity(caseNumbers[b]);
+        double loglik = 0.0;
+
+        // --- forward messages (lockstep over the batch) --- //
+        for (int n = 0; n < M; n++) {
+            for (int b = 0; b < B; b++) {
+                int c = caseNumbers[b];
+                double[] w = this.weights[this.log.getNumericalLogEntry(c, n)];
+                int out = (b * M + n) * K;
+                Arrays.fill(f, out, out + K, 0.0);
+                for (int k = 0; k < K; k++) {
+                    double previous = (n == 0) ? prior[k] : f[out - K + k];
+                    if (previous == 0.0)
+                        continue;
+                    int row = k * K;
+                    for (int j = 0; j < K; j++)
+                        f[out + j] += previous * w[row + j];
+                }
+                if (n == M - 1) {
+                    // the last message includes emitting the final symbol
+                    int last = this.log.getNumericalLogEntry(c, N - 1);
+                    for (int j = 0; j < K; j++)
+                        f[out + j] *= obsmat[j][last];
+                }
+                double sum = 0.0;
+                for (int j = 0; j < K; j++)
+                    sum += f[out + j];
+                loglik += Math.log(sum) * multiplicities[b];
+                double constant = 1 / sum;
+                scale[b * M + n] = constant;
+                for (int j = 0; j < K; j++)
+                    f[out + j] *= constant;
+            }
+        }
+        if (obsmatNumerator == null)
+            return loglik;
+        for (int b = 0; b < B; b++) {
+            int last = this.log.getNumericalLogEntry(caseNumbers[b], N - 1);
+            int out = (b * M + M - 1) * K;
+            for (int j = 0; j < K; j++)
+                obsmatNumerator[j][last] += f[out + j] * multiplicities[b];
+        }
+
+        // --- backward messages and numerators (lockstep over the batch) --- //
+        for (int n = M - 1; n >= 0; n--) {
+            for (int b = 0; b < B; b++) {
+                int c = caseNumbers[b];
+                int x = this.log.getNumericalLogEntry(c, n);
+                double[] w = this.weights[x];
+                double m = multiplicities[b];
+                double constant = scale[b * M + n];
+                int out = (b * M + n) * K;
+                int previous = out - K;
+
+                // message of the next position (for the last position: emission of the final symbol)
+                double[] next = g;
+                int nextOffset = out + K;
+                if (n == M - 1) {
+                    next = this.finalEmission;
+                    nextOffset = 0;
+                    int last = this.log.getNumericalLogEntry(c, N - 1);
+                    for (int j = 0; j < K; j++)
+                        next[j] = obsmat[j][last];
+                }
+
+                for (int j = 0; j < K; j++) {
+                    double sum = 0.0;
+                    int row = j * K;
+                    for (int k = 0; k < K; k++)
+                        sum += w[row + k] * next[nextOffset + k];
+                    g[out + j] = sum * constant;
+                }
+                for (int k = 0; k < K; k++) {
+                    double before = (n == 0) ? prior[k] : f[previous + k];
+                    if (before == 0.0)
+                        continue;
+                    double factor = before * constant * m;
+                    double[] numeratorRow = transcubeNumerator[k][x];
+                    int row = k * K;
+                    for (int j = 0; j < K; j++)
+                        numeratorRow[j] += factor * w[row + j] * next[nextOffset + j];
+                }
+                for (int j = 0; j < K; j++) {
+                    double before = (n == 0) ? prior[j] : f[previous + j];
+                    double posterior = before * g[out + j] * m;
+                    obsmatNumerator[j][x] += posterior;
+                    if (n == 0)
+                        priorNumerator[j] += posterior;
+                }
+            }
+        }
+
+        return loglik;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Algorithm;
+
+import java.util.Random;
+
+import Framework.Models.Log.LogProfile;
+import Framework.Models.Log.NonRedundantLog;
+
+// initializes the EM algorithm from the directly-follows graph of the log
+// symbols are clustered by k-means on their directly-follows profiles (distributions over the following symbols),
+// so symbols after which the process continues similarly lead to the same state
+public class DfgInitializer extends ParameterInitializer {
+
+    public DfgInitializer() {
+        super();
+    }
+
+    public DfgInitializer(Random random) {
+        super(random);
+    }
+
+    protected double[][] assignSymbols(NonRedundantLog log, int numberOfStates, boolean useUniqueInitialState, boolean useTerminationSymbol) {
+        LogProfile profile = log.getProfile();
+        int numberOfSymbols = profile.getNumberOfSymbols();
+        int terminationNumber = log.getTerminationNumber();
+
+        // directly-follows profile of each symbol (distribution over the symbols following it, termination excluded)
+        double[][] features = new double[numberOfSymbols][numberOfSymbols];
+        boolean[] clustered = new boolean[numberOfSymbols];
+        for (int x = 0; x < numberOfSymbols; x++) {
+            if (useTerminationSymbol && (x == terminationNumber))
+                continue;
+            double outgoing = 0.0;
+            for (int y = 0; y < numberOfSymbols; y++)
+                if ((useTerminationSymbol == false) || (y != terminationNumber))
+                    outgoing += profile.getDirectlyFollowsCount(x, y);
+            clustered[x] = outgoing > 0;
+            for (int y = 0; y < numberOfSymbols; y++)
+                if (clustered[x] && ((useTerminationSymbol == false) || (y != terminationNumber)))
+                    features[x][y] = profile.getDirectlyFollowsCount(x, y) / outgoing;
+        }
+
+        // cluster symbols with similar followers
+        return this.clusterSymbols(features, clustered, terminationNumber, numberOfStates, useUniqueInitialState, useTerminationSymbol);
+    }
+
+}
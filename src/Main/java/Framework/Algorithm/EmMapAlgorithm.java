@@ -36,6 +36,7 @@ public class EmMapAlgorithm implements Algorithm {
     // the prior strength in terms of the log size (e.g., 0.2 means pseudoobservations with strength 20% of number of cases in log)
     public double priorStrength = 0.0;
     // number of iterations after which EM aborts, even if convergence has not been achieved
+    // 0 returns the starting parameters together with their likelihood
     private int maximumIterations = 100;
     // if improvement of target value falls below convergence threshold the algorithm stops
     private double convergenceThreshold = 0.01;
@@ -50,10 +51,10 @@ public class EmMapAlgorithm implements Algorithm {
     private int numberOfStates;
     // number of unique symbols
     private int numberOfSymbols;
-    // maximum length of individual observation sequence
-    private int maximumSequenceLength;
     // the log containing observations
     private NonRedundantLog log = null;
+    // computes the starting values of the parameters (random starting values if null)
+    private ParameterInitializer initializer = null;
 
 
     // constructor with default number of states and default prior strength
@@ -71,7 +72,6 @@ public class EmMapAlgorithm implements Algorithm {
         this.log = log;
         this.numberOfSymbols = log.getNumberOfUniqueSymbols();
         this.numberOfStates = numberOfStates;
-        this.maximumSequenceLength = log.getLengthOfLongestCase();
         this.priorStrength = priorStrength;
     }
 
@@ -84,10 +84,8 @@ public class EmMapAlgorithm implements Algorithm {
         double[][] obsmat = new double[numberOfStates][numberOfSymbols];
         double[][][] transcube = new double[numberOfStates][numberOfSymbols][numberOfStates];
 
-        // helper arrays for message passing
-        double forward_messages[][] = new double[maximumSequenceLength - 1][numberOfStates];
-        double backward_messages[][] = new double[maximumSequenceLength - 1][numberOfStates];
-        double constants[] = new double[maximumSequenceLength - 1];
+        // E-step over all cases, with message buffers shared across iterations
+        BatchedForwardBackward forwardBackward = new BatchedForwardBackward(this.log, numberOfStates);
 
         // target values are stored in this variables
         double loglik = 0.0; // loglik (conditioned on parameters)
@@ -108,56 +106,18 @@ public class EmMapAlgorithm implements Algorithm {
         double[] tmp_obsmat = new double[numberOfStates];
         double[][] tmp_transcube = new double[numberOfStates][numberOfSymbols];
 
-        double sum1 = 0;
-        double sum2 = 0;
-        double sum3 = 0;
-
         int iterations = 0;
 
 
-        // ----- generate random initial parameters ----- //
+        // ----- generate initial parameters ----- //
 
         long startingTime = System.currentTimeMillis();
         long endingTime;
 
-        // specify range of random parameters
-        double high = 0.75;
-        double low = 0.25;
-
-        for (int i = 0; i < numberOfStates; i++) {
-            // random parameters for prior
-            prior[i] = Math.random() * (high - low) + low;
-            sum1 += prior[i];
-
-            for (int j = 0; j < numberOfSymbols; j++) {
-                // random parameters for obsmat
-                obsmat[i][j] = Math.random() * (high - low) + low;
-                sum2 += obsmat[i][j];
-
-                for (int k = 0; k < numberOfStates; k++) {
-                    // random parameters for transcube
-                    transcube[i][j][k] = Math.random() * (high - low) + low;
-                    sum3 = sum3 + transcube[i][j][k];
-                }
-
-                for (int k = 0; k < numberOfStates; k++) {
-                    // normalize transcube
-                    transcube[i][j][k] = transcube[i][j][k] / sum3;
-                }
-                sum3 = 0;
-            }
-
-            for (int j = 0; j < numberOfSymbols; j++) {
-                // normalize obsmat
-                obsmat[i][j] = obsmat[i][j] / sum2;
-            }
-            sum2 = 0;
-        }
-        for (int i = 0; i < numberOfStates; i++) {
-            // normalize prior
-            prior[i] = prior[i] / sum1;
-        }
-        sum1 = 0;
+        if (this.initializer != null)
+            this.initializer.initialize(this.log, numberOfStates, this.useUniqueIntitalState, this.useTerminationSymbol, prior, obsmat, transcube);
+        else
+            this.initializeRandomly(prior, obsmat, transcube);
 
         // if unique initial state is to be used, make state 1 this initial state!
         if (this.useUniqueIntitalState == true) {
@@ -196,8 +156,6 @@ public class EmMapAlgorithm implements Algorithm {
 
         // ----- parameter estimation ----- //
 
-        int cur_obs;
-        int next_obs;
 
         // iteratively optimize parameters
         for (int i = 0; i < this.maximumIterations; i++) {
@@ -217,112 +175,8 @@ public class EmMapAlgorithm implements Algorithm {
                 }
             }
 
-            // start calculating messages (for each case independently)
-            for (int c = 0; c < this.log.getNumberOfUniqueCases(); c++) {
-                // determine number of symbols in this case
-                int N = this.log.getNumericalLog().get(c).size();
-
-                // determine multiplicity of this case
-                double caseMultiplicity = (double) this.log.getCaseMultiplicity(c);
-
-                // --- compute forward messages --- ///
-
-                // first factor
-                cur_obs = this.log.getNumericalLogEntry(c, 0);
-                constants[0] = 0;
-                for (int j = 0; j < numberOfStates; j++) {
-                    forward_messages[0][j] = 0;
-                    for (int k = 0; k < numberOfStates; k++) {
-                        forward_messages[0][j] = forward_messages[0][j] + (prior[k] * obsmat[k][cur_obs] * transcube[k][cur_obs][j]);
-                    }
-                    constants[0] = constants[0] + forward_messages[0][j];
-                }
-                loglik = loglik + (Math.log(constants[0]) * caseMultiplicity);
-                constants[0] = 1 / constants[0];
-                for (int j = 0; j < numberOfStates; j++) {
-                    forward_messages[0][j] = forward_messages[0][j] * constants[0];
-                }
-
-                // middle factors
-                for (int n = 1; n < N - 2; n++) {
-                    cur_obs = this.log.getNumericalLogEntry(c, n);
-                    constants[n] = 0;
-                    for (int j = 0; j < numberOfStates; j++) {
-                        forward_messages[n][j] = 0;
-                        for (int k = 0; k < numberOfStates; k++) {
-                            forward_messages[n][j] = forward_messages[n][j] + (forward_messages[n - 1][k] * obsmat[k][cur_obs] * transcube[k][cur_obs][j]);
-                        }
-                        constants[n] = constants[n] + forward_messages[n][j];
-                    }
-                    loglik = loglik + (Math.log(constants[n]) * caseMultiplicity);
-                    constants[n] = 1 / constants[n];
-                    for (int j = 0; j < numberOfStates; j++) {
-                        forward_messages[n][j] = forward_messages[n][j] * constants[n];
-                    }
-                }
-
-                // last factor
-                constants[N - 2] = 0;
-                cur_obs = this.log.getNumericalLogEntry(c, N - 2);
-                next_obs = this.log.getNumericalLogEntry(c, N - 1);
-                for (int j = 0; j < numberOfStates; j++) {
-                    forward_messages[N - 2][j] = 0;
-                    for (int k = 0; k < numberOfStates; k++) {
-                        forward_messages[N - 2][j] = forward_messages[N - 2][j] + (forward_messages[N - 2 - 1][k] * obsmat[k][cur_obs] * obsmat[j][next_obs] * transcube[k][cur_obs][j]);
-                    }
-                    constants[N - 2] = constants[N - 2] + forward_messages[N - 2][j];
-                }
-                loglik = loglik + (Math.log(constants[N - 2]) * caseMultiplicity);
-                constants[N - 2] = 1 / constants[N - 2];
-                for (int j = 0; j < numberOfStates; j++) {
-                    forward_messages[N - 2][j] = forward_messages[N - 2][j] * constants[N - 2];
-                    obsmat_numerator[j][next_obs] = obsmat_numerator[j][next_obs] + (forward_messages[N - 2][j] * caseMultiplicity);
-                }
-
-
-                // --- compute backward messages --- //
-
-                // first factor (direct update of numerators of update equations)
-                for (int j = 0; j < numberOfStates; j++) {
-                    backward_messages[N - 2][j] = 0;
-                    for (int k = 0; k < numberOfStates; k++) {
-                        backward_messages[N - 2][j] = backward_messages[N - 2][j] + (obsmat[k][next_obs] * transcube[j][cur_obs][k]);
-                        transcube_numerator[k][cur_obs][j] = transcube_numerator[k][cur_obs][j] + ((forward_messages[N - 2 - 1][k] * obsmat[k][cur_obs] * transcube[k][cur_obs][j] * obsmat[j][next_obs] * constants[N - 2]) * caseMultiplicity);
-                    }
-                    backward_messages[N - 2][j] = backward_messages[N - 2][j] * obsmat[j][cur_obs] * constants[N - 2];
-                    obsmat_numerator[j][cur_obs] = obsmat_numerator[j][cur_obs] + ((forward_messages[N - 2 - 1][j] * backward_messages[N - 2][j]) * caseMultiplicity);
-                }
-
-                // middle factors  (direct update of numerators of update equations)
-                for (int n = N - 2 - 1; n > 0; n--) {
-                    cur_obs = this.log.getNumericalLogEntry(c, n);
-
-                    for (int j = 0; j < numberOfStates; j++) {
-                        backward_messages[n][j] = 0;
-                        for (int k = 0; k < numberOfStates; k++) {
-                            backward_messages[n][j] = backward_messages[n][j] + (backward_messages[n + 1][k] * transcube[j][cur_obs][k]);
-                            transcube_numerator[k][cur_obs][j] = transcube_numerator[k][cur_obs][j] + ((forward_messages[n - 1][k] * obsmat[k][cur_obs] * transcube[k][cur_obs][j] * backward_messages[n + 1][j] * constants[n]) * caseMultiplicity);
-                        }
-                        backward_messages[n][j] = backward_messages[n][j] * obsmat[j][cur_obs] * constants[n];
-                        obsmat_numerator[j][cur_obs] = obsmat_numerator[j][cur_obs] + ((forward_messages[n - 1][j] * backward_messages[n][j]) * caseMultiplicity);
-                    }
-                }
-
-                // last factor (direct update of numerators of update equations)
-                cur_obs = this.log.getNumericalLogEntry(c, 0);
-                for (int j = 0; j < numberOfStates; j++) {
-                    backward_messages[0][j] = 0;
-                    for (int k = 0; k < numberOfStates; k++) {
-                        backward_messages[0][j] = backward_messages[0][j] + (backward_messages[0 + 1][k] * transcube[j][cur_obs][k]);
-                        transcube_numerator[k][cur_obs][j] = transcube_numerator[k][cur_obs][j] + ((prior[k] * obsmat[k][cur_obs] * transcube[k][cur_obs][j] * backward_messages[0 + 1][j] * constants[0]) * caseMultiplicity);
-                    }
-                    backward_messages[0][j] = backward_messages[0][j] * obsmat[j][cur_obs] * prior[j] * constants[0];
-                    prior_numerator[j] = prior_numerator[j] + (backward_messages[0][j] * caseMultiplicity);
-                    obsmat_numerator[j][cur_obs] = obsmat_numerator[j][cur_obs] + (backward_messages[0][j] * caseMultiplicity);
-                }
-
-            }
-            // all cases are processed
+            // calculate messages for all cases (grouped by length) and accumulate the numerators
+            loglik = forwardBackward.accumulate(prior, obsmat, transcube, prior_numerator, obsmat_numerator, transcube_numerator);
 
 
             // ----- check for convergence ----- //
@@ -401,6 +255,10 @@ public class EmMapAlgorithm implements Algorithm {
             }
         }
 
+        // without iterations, the statistics refer to the starting parameters
+        if (this.maximumIterations == 0)
+            loglik = forwardBackward.logLikelihood(prior, obsmat, transcube);
+
         // ----------------------------------------- //
         // --------- model selection statistics----- //
         // ----------------------------------------- //
@@ -453,6 +311,61 @@ public class EmMapAlgorithm implements Algorithm {
         return result;
     }
 
+    // uniform random parameters in [0.25, 0.75] (normalized)
+    private void initializeRandomly(double[] prior, double[][] obsmat, double[][][] transcube) {
+        double sum1 = 0;
+        double sum2 = 0;
+        double sum3 = 0;
+
+        // specify range of random parameters
+        double high = 0.75;
+        double low = 0.25;
+
+        for (int i = 0; i < numberOfStates; i++) {
+            // random parameters for prior
+            prior[i] = Math.random() * (high - low) + low;
+            sum1 += prior[i];
+
+            for (int j = 0; j < numberOfSymbols; j++) {
+                // random parameters for obsmat
+                obsmat[i][j] = Math.random() * (high - low) + low;
+                sum2 += obsmat[i][j];
+
+                for (int k = 0; k < numberOfStates; k++) {
+                    // random parameters for transcube
+                    transcube[i][j][k] = Math.random() * (high - low) + low;
+                    sum3 = sum3 + transcube[i][j][k];
+                }
+
+                for (int k = 0; k < numberOfStates; k++) {
+                    // normalize transcube
+                    transcube[i][j][k] = transcube[i][j][k] / sum3;
+                }
+                sum3 = 0;
+            }
+
+            for (int j = 0; j < numberOfSymbols; j++) {
+                // normalize obsmat
+                obsmat[i][j] = obsmat[i][j] / sum2;
+            }
+            sum2 = 0;
+        }
+        for (int i = 0; i < numberOfStates; i++) {
+            // normalize prior
+            prior[i] = prior[i] / sum1;
+        }
+        sum1 = 0;
+    }
+
+    public ParameterInitializer getInitializer() {
+        return initializer;
+    }
+
+    // sets the initializer computing starting values (null for random starting values)
+    public void setInitializer(ParameterInitializer initializer) {
+        this.initializer = initializer;
+    }
+
     public int getMaximumIterations() {
         return maximumIterations;
     }
@@ -501,14 +414,6 @@ public class EmMapAlgorithm implements Algorithm {
         this.numberOfSymbols = numberOfSymbols;
     }
 
-    public int getMaximumSequenceLength() {
-        return maximumSequenceLength;
-    }
-
-    public void setMaximumSequenceLength(int maximumSequenceLength) {
-        this.maximumSequenceLength = maximumSequenceLength;
-    }
-
     public NonRedundantLog getLog() {
         return log;
     }
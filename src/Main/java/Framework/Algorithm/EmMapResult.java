@@ -30,6 +30,7 @@
 
 package Framework.Algorithm;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -39,8 +40,10 @@ import java.util.Stack;
 
 import Framework.Models.Log.NonRedundantLog;
 import Framework.Models.TransitionSystem.TransitionSystem;
+import Framework.Utils.Renderable;
+import Framework.Utils.Utilities;
 
-public class EmMapResult extends AlgorithmResult {
+public class EmMapResult extends AlgorithmResult implements Renderable {
 
     public ArrayList<String> protocol;
 
@@ -57,6 +60,13 @@ public class EmMapResult extends AlgorithmResult {
     public int iterations;
     public NonRedundantLog log;
     public double loglik;
+    // transcube as one array (see getFlatTranscube), computed when first needed
+    private double[] flatTranscube = null;
+    // marginal transition matrix M and its powers M^(2^i) (see getMarginalTransitionMatrix), computed when first needed
+    private ArrayList<double[][]> marginalTransitionSquares = new ArrayList<double[][]>();
+    // transitions between transient states and fundamental matrix (see getFundamentalMatrix), computed when first needed
+    private double[][] transientTransitions = null;
+    private double[][] fundamentalMatrix = null;
 
 
     // generates a transition system
@@ -237,103 +247,244 @@ public class EmMapResult extends AlgorithmResult {
     // ----- prediction methods ----- //
     // ------------------------------ //
 
-    // calculates probabilities for each symbol after seeing a history
-    public double[] getDistributionOverNextSymbol(String[] history) {
-
-        // the distribution over symbols (returned in the end)
-        double[] symbolDistribution = new double[this.numberOfSymbols];
-
-        // prior contains the initial state distribution
-        double[] stateDistribution = this.updateStateDistribution(this.prior, history);
-
-        // compute distribution over symbols given current state distribution
-        for (int i = 0; i < this.numberOfSymbols; i++) {
-            symbolDistribution[i] = 0;
-            for (int j = 0; j < this.numberOfStates; j++) {
-                symbolDistribution[i] += stateDistribution[j] * this.obsmat[j][i];
-            }
+    // returns the transition probabilities as one array, transcube[k][x][j] is stored at (x * numberOfStates + k) * numberOfStates + j
+    // so that the matrix of each symbol is contiguous. the array is cached, the parameters must not change afterwards
+    public synchronized double[] getFlatTranscube() {
+        if (this.flatTranscube == null) {
+            double[] flat = new double[this.numberOfSymbols * this.numberOfStates * this.numberOfStates];
+            for (int x = 0; x < this.numberOfSymbols; x++)
+                for (int k = 0; k < this.numberOfStates; k++)
+                    System.arraycopy(this.transcube[k][x], 0, flat, (x * this.numberOfStates + k) * this.numberOfStates, this.numberOfStates);
+            this.flatTranscube = flat;
         }
+        return this.flatTranscube;
+    }
 
-        return symbolDistribution;
+    // creates a session that tracks the state distribution of a running case event by event
+    public PredictionSession createSession() {
+        return new PredictionSession(this);
+    }
+
+    // calculates probabilities for each symbol after seeing a history
+    public double[] getDistributionOverNextSymbol(String[] history) {
+        PredictionSession session = this.createSession();
+        session.observe(history);
+        return session.getDistributionOverNextSymbol();
     }
 
     // calculates probabilities for a particular symbol after seeing a history, for each of the subsequent steps
     public double[] getSymbolProbabilitiesBySteps(String[] history, int numberOfSteps, String symbol) {
 
-        if ((numberOfSteps < 1) || (symbol == null) || (this.log.getSymbolToNumberMapping().get(symbol) == null))
+        int numericalSymbol = (symbol == null) ? -1 : this.log.getSymbolTable().getNumber(symbol);
+        if ((numberOfSteps < 1) || (numericalSymbol < 0))
             throw new IllegalArgumentException("problem with arguments while computing symbol probabilities");
 
+        double[][] symbolDistributions = this.getSymbolDistributionsBySteps(history, numberOfSteps);
         double[] symbolProbabilities = new double[numberOfSteps];
-        int numericalSymbol = this.log.getSymbolToNumberMapping().get(symbol);
-
-        double[] currentStateDistribution = this.updateStateDistribution(this.prior, history);
-
-        for (int i = 0; i < numberOfSteps; i++) {
-            // compute symbol probabilitiy
-            symbolProbabilities[i] = 0.0;
-            for (int j = 0; j < this.numberOfStates; j++) {
-                symbolProbabilities[i] += currentStateDistribution[j] * this.obsmat[j][numericalSymbol];
-            }
-
-            // update state distribution
-            double[] oldStateDistribution = Arrays.copyOf(currentStateDistribution, currentStateDistribution.length);
-            for (int j = 0; j < this.numberOfStates; j++) {
-                currentStateDistribution[j] = 0.0;
-                for (int k = 0; k < this.numberOfStates; k++) {
-                    for (int l = 0; l < this.numberOfSymbols; l++) {
-                        currentStateDistribution[j] += oldStateDistribution[k] * this.obsmat[k][l] * this.transcube[k][l][j];
-                    }
-                }
-            }
-        }
-
-
+        for (int i = 0; i < numberOfSteps; i++)
+            symbolProbabilities[i] = symbolDistributions[i][numericalSymbol];
         return symbolProbabilities;
     }
 
-    private double[] updateStateDistribution(double[] currentStateDistribution, String[] history) {
+    // calculates the distribution over all symbols after seeing a history, for each of the subsequent steps
+    public double[][] getSymbolDistributionsBySteps(String[] history, int numberOfSteps) {
+        PredictionSession session = this.createSession();
+        session.observe(history);
+        return this.getSymbolDistributionsBySteps(session.getStateDistribution(), numberOfSteps);
+    }
 
-        // prior contains the initial state distribution
-        double[] stateDistribution = Arrays.copyOf(currentStateDistribution, currentStateDistribution.length);
+    // same as above, starting from a distribution over states. each step costs O(k^2 + k * symbols)
+    public double[][] getSymbolDistributionsBySteps(double[] stateDistribution, int numberOfSteps) {
+        if (numberOfSteps < 1)
+            throw new IllegalArgumentException("problem with arguments while computing symbol probabilities");
 
-        if ((history == null) || (history.length == 0)) {
-            // state distribution is up to date already as there is no history to update it with
-            return stateDistribution;
-        } else {
-            // convert history into numerical format
-            int[] numericalHistory = new int[history.length];
-            for (int i = 0; i < history.length; i++) {
+        double[][] marginalTransitions = this.getMarginalTransitionMatrix();
+        double[][] symbolDistributions = new double[numberOfSteps][];
+        double[] currentStateDistribution = Arrays.copyOf(stateDistribution, stateDistribution.length);
+        for (int i = 0; i < numberOfSteps; i++) {
+            symbolDistributions[i] = this.getSymbolDistribution(currentStateDistribution);
+            if (i < numberOfSteps - 1)
+                currentStateDistribution = multiply(currentStateDistribution, marginalTransitions);
+        }
+        return symbolDistributions;
+    }
 
-                if (this.log.getSymbolToNumberMapping().get(history[i]) == null) {
-                    throw new IllegalArgumentException("History contains an event not found of the original log!");
+    // distribution over the symbol emitted "step" steps after seeing a history (step 1 is the next symbol)
+    // uses powers of the marginal transition matrix, so long horizons cost O(k^2 log(step))
+    public double[] getSymbolDistributionAtStep(String[] history, int step) {
+        if (step < 1)
+            throw new IllegalArgumentException("problem with arguments while computing symbol probabilities");
+        PredictionSession session = this.createSession();
+        session.observe(history);
+        double[] currentStateDistribution = session.getStateDistribution();
+
+        // multiply with the powers M^(2^i) for each bit i set in step - 1
+        int remainingSteps = step - 1;
+        for (int i = 0; remainingSteps > 0; i++, remainingSteps >>>= 1)
+            if ((remainingSteps & 1) == 1)
+                currentStateDistribution = multiply(currentStateDistribution, this.getMarginalTransitionMatrixSquare(i));
+        return this.getSymbolDistribution(currentStateDistribution);
+    }
+
+    // returns M with M[k][j] = sum over l of obsmat[k][l] * transcube[k][l][j], the probability to move from state k
+    // to state j in one step (whatever symbol is emitted). the matrix is cached, the parameters must not change afterwards
+    public synchronized double[][] getMarginalTransitionMatrix() {
+        if (this.marginalTransitionSquares.isEmpty()) {
+            double[][] marginalTransitions = new double[this.numberOfStates][this.numberOfStates];
+            for (int k = 0; k < this.numberOfStates; k++)
+                for (int l = 0; l < this.numberOfSymbols; l++) {
+                    double emission = this.obsmat[k][l];
+                    if (emission == 0.0)
+                        continue;
+                    for (int j = 0; j < this.numberOfStates; j++)
+                        marginalTransitions[k][j] += emission * this.transcube[k][l][j];
                 }
-                numericalHistory[i] = this.log.getSymbolToNumberMapping().get(history[i]);
+            this.marginalTransitionSquares.add(marginalTransitions);
+        }
+        return this.marginalTransitionSquares.get(0);
+    }
+
+    // returns M^(2^i), computed by repeated squaring and cached
+    private synchronized double[][] getMarginalTransitionMatrixSquare(int i) {
+        this.getMarginalTransitionMatrix();
+        while (this.marginalTransitionSquares.size() <= i) {
+            double[][] last = this.marginalTransitionSquares.get(this.marginalTransitionSquares.size() - 1);
+            double[][] square = new double[this.numberOfStates][];
+            for (int k = 0; k < this.numberOfStates; k++)
+                square[k] = multiply(last[k], last);
+            this.marginalTransitionSquares.add(square);
+        }
+        return this.marginalTransitionSquares.get(i);
+    }
+
+    // ----- completion forecasting ----- //
+    // a case ends when the termination symbol is emitted, which makes the model an absorbing markov chain:
+    // Q[k][j] = sum over l != termination symbol of obsmat[k][l] * transcube[k][l][j] moves between transient states
+    // while an event is emitted, and obsmat[k][termination symbol] is the probability to be absorbed in state k
+
+    // expected number of events (not counting the termination symbol) that a case emits after seeing a history
+    public double getExpectedRemainingLength(String[] history) {
+        PredictionSession session = this.createSession();
+        session.observe(history);
+        return this.getExpectedRemainingLength(session.getStateDistribution());
+    }
+
+    // same as above, starting from a distribution over states: b * N * 1 - 1 with the fundamental matrix N = (I - Q)^-1
+    public double getExpectedRemainingLength(double[] stateDistribution) {
+        double[][] fundamentalMatrix = this.getFundamentalMatrix();
+        double expectedSteps = 0.0;
+        for (int k = 0; k < this.numberOfStates; k++)
+            for (int j = 0; j < this.numberOfStates; j++)
+                expectedSteps += stateDistribution[k] * fundamentalMatrix[k][j];
+        // the last step emits the termination symbol
+        return expectedSteps - 1.0;
+    }
+
+    // probabilities that a case ends after at most n more events, for n = 0 to maximumEvents, after seeing a history
+    public double[] getCompletionProbabilities(String[] history, int maximumEvents) {
+        PredictionSession session = this.createSession();
+        session.observe(history);
+        return this.getCompletionProbabilities(session.getStateDistribution(), maximumEvents);
+    }
+
+    // same as above, starting from a distribution over states: 1 - b * Q^(n+1) * 1
+    public double[] getCompletionProbabilities(double[] stateDistribution, int maximumEvents) {
+        if (maximumEvents < 0)
+            throw new IllegalArgumentException("maximum number of events must not be negative");
+        double[][] transientTransitions = this.getTransientTransitionMatrix();
+        double[] completionProbabilities = new double[maximumEvents + 1];
+        double[] running = Arrays.copyOf(stateDistribution, stateDistribution.length);
+        for (int n = 0; n <= maximumEvents; n++) {
+            running = multiply(running, transientTransitions);
+            double stillRunning = 0.0;
+            for (int k = 0; k < this.numberOfStates; k++)
+                stillRunning += running[k];
+            completionProbabilities[n] = 1.0 - stillRunning;
+        }
+        return completionProbabilities;
+    }
+
+    // returns the transition matrix Q between transient states (see above). cached, the parameters must not change afterwards
+    public synchronized double[][] getTransientTransitionMatrix() {
+        if (this.transientTransitions == null) {
+            int terminationNumber = this.log.getTerminationNumber();
+            double[][] marginalTransitions = this.getMarginalTransitionMatrix();
+            double[][] transientTransitions = new double[this.numberOfStates][this.numberOfStates];
+            for (int k = 0; k < this.numberOfStates; k++)
+                for (int j = 0; j < this.numberOfStates; j++)
+                    transientTransitions[k][j] = marginalTransitions[k][j] - (this.obsmat[k][terminationNumber] * this.transcube[k][terminationNumber][j]);
+            this.transientTransitions = transientTransitions;
+        }
+        return this.transientTransitions;
+    }
+
+    // returns the fundamental matrix N = (I - Q)^-1, N[k][j] is the expected number of visits to state j when starting in
+    // state k (Gauss-Jordan elimination with partial pivoting). cached, the parameters must not change afterwards
+    public synchronized double[][] getFundamentalMatrix() {
+        if (this.fundamentalMatrix == null) {
+            int K = this.numberOfStates;
+            double[][] transientTransitions = this.getTransientTransitionMatrix();
+            // augmented matrix [I - Q | I]
+            double[][] augmented = new double[K][2 * K];
+            for (int k = 0; k < K; k++) {
+                for (int j = 0; j < K; j++)
+                    augmented[k][j] = ((k == j) ? 1.0 : 0.0) - transientTransitions[k][j];
+                augmented[k][K + k] = 1.0;
             }
-
-            // update state distribution up to end of history
-            for (int i = 0; i < numericalHistory.length; i++) {
-                // save current distribution temporarily
-                double[] oldStateDistribution = Arrays.copyOf(stateDistribution, stateDistribution.length);
-
-                // update the distribution
-                double tmpSum = 0.0;
-                for (int j = 0; j < this.numberOfStates; j++) {
-                    stateDistribution[j] = 0.0;
-                    for (int k = 0; k < this.numberOfStates; k++) {
-                        stateDistribution[j] += oldStateDistribution[k] * this.transcube[k][numericalHistory[i]][j];
-                    }
-                    tmpSum += stateDistribution[j];
-                }
-                // renormalize to avoid rounding errors
-                //System.out.println("tmpSum: " + tmpSum);
-                for (int j = 0; j < this.numberOfStates; j++) {
-                    stateDistribution[j] = (stateDistribution[j] / tmpSum);
+            for (int column = 0; column < K; column++) {
+                int pivot = column;
+                for (int k = column + 1; k < K; k++)
+                    if (Math.abs(augmented[k][column]) > Math.abs(augmented[pivot][column]))
+                        pivot = k;
+                if (Math.abs(augmented[pivot][column]) < 1e-12)
+                    throw new IllegalStateException("the model contains states from which cases never end");
+                double[] tmp = augmented[pivot];
+                augmented[pivot] = augmented[column];
+                augmented[column] = tmp;
+
+                double pivotValue = augmented[column][column];
+                for (int j = 0; j < 2 * K; j++)
+                    augmented[column][j] /= pivotValue;
+                for (int k = 0; k < K; k++) {
+                    double factor = augmented[k][column];
+                    if ((k == column) || (factor == 0.0))
+                        continue;
+                    for (int j = 0; j < 2 * K; j++)
+                        augmented[k][j] -= factor * augmented[column][j];
                 }
             }
+            double[][] fundamentalMatrix = new double[K][];
+            for (int k = 0; k < K; k++)
+                fundamentalMatrix[k] = Arrays.copyOfRange(augmented[k], K, 2 * K);
+            this.fundamentalMatrix = fundamentalMatrix;
         }
+        return this.fundamentalMatrix;
+    }
 
-        return stateDistribution;
+    // distribution over the emitted symbol given a distribution over states
+    private double[] getSymbolDistribution(double[] stateDistribution) {
+        double[] symbolDistribution = new double[this.numberOfSymbols];
+        for (int k = 0; k < this.numberOfStates; k++) {
+            double weight = stateDistribution[k];
+            if (weight == 0.0)
+                continue;
+            for (int l = 0; l < this.numberOfSymbols; l++)
+                symbolDistribution[l] += weight * this.obsmat[k][l];
+        }
+        return symbolDistribution;
+    }
 
+    // row vector times matrix
+    private static double[] multiply(double[] vector, double[][] matrix) {
+        double[] result = new double[matrix[0].length];
+        for (int k = 0; k < vector.length; k++) {
+            double weight = vector[k];
+            if (weight == 0.0)
+                continue;
+            for (int j = 0; j < result.length; j++)
+                result[j] += weight * matrix[k][j];
+        }
+        return result;
     }
 
     // calculates the cross entropy of the samples in this log and this object's model
@@ -344,7 +495,7 @@ public class EmMapResult extends AlgorithmResult {
         for (int c = 0; c < log.getNumberOfUniqueCases(); c++) {
 
             // determine number of symbols in this case
-            int N = log.getNumericalLog().get(c).size();
+            int N = log.getLengthOfCase(c);
 
             // determine multiplicity of this case
             double caseMultiplicity = (double) log.getCaseMultiplicity(c);
@@ -414,12 +565,15 @@ public class EmMapResult extends AlgorithmResult {
     // ------------------------- //
 
     public String toString() {
-        String result = "";
-        result += "Learning \"" + this.log.name + "\" from " + this.numberOfObservations + " observations\n";
-        result += "States: " + this.numberOfStates + " / Symbols: " + this.numberOfSymbols + " \n";
-        result += "log-likelihood: " + this.loglik + " --- (AIC: " + Math.round(this.AIC * 100) / 100.0 + " / BIC: " + Math.round(this.BIC * 100) / 100.0 + " / HEU" + Math.round(this.HEU * 100) / 100.0 + ")\n";
+        return Utilities.render(this, -1);
+    }
 
-        return result;
+    // writes a short description of this result (there are no entries to limit)
+    public void render(Appendable out, int limit) throws IOException {
+        out.append("Learning \"").append(this.log.name).append("\" from ").append(Integer.toString(this.numberOfObservations)).append(" observations\n");
+        out.append("States: ").append(Integer.toString(this.numberOfStates)).append(" / Symbols: ").append(Integer.toString(this.numberOfSymbols)).append(" \n");
+        out.append("log-likelihood: ").append(Double.toString(this.loglik)).append(" --- (AIC: ").append(Double.toString(Math.round(this.AIC * 100) / 100.0));
+        out.append(" / BIC: ").append(Double.toString(Math.round(this.BIC * 100) / 100.0)).append(" / HEU").append(Double.toString(Math.round(this.HEU * 100) / 100.0)).append(")\n");
     }
 
 }
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Algorithm;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import Framework.Models.Log.LogProfile;
+import Framework.Models.Log.NonRedundantLog;
+
+// computes starting values for the parameters of the EM algorithm (instead of uniform random values)
+// subclasses assign each symbol softly to the states, the parameters are then seeded from the log profile:
+// after emitting symbol x the process moves to the states x is assigned to, and each state emits the symbols
+// that directly follow the symbols assigned to it (i.e., states are clusters of contexts of length one).
+// the structural constraints (unique initial state, termination state) are enforced by the EM algorithm afterwards
+public abstract class ParameterInitializer {
+
+    // fraction of probability mass spread uniformly over all entries (keeps all parameters above zero)
+    protected double smoothing = 0.05;
+    // relative amount of random noise applied to each parameter (lets restarts explore different solutions)
+    protected double noise = 0.1;
+    // fraction of the assignment of a symbol that is spread over all other clusters (see clusterSymbols)
+    protected double softness = 0.1;
+    // maximum number of k-means iterations (see clusterSymbols)
+    protected int maximumClusteringIterations = 50;
+    protected Random random;
+
+
+    public ParameterInitializer() {
+        this(new Random());
+    }
+
+    public ParameterInitializer(Random random) {
+        this.random = random;
+    }
+
+    // computes the soft assignment of symbols to states. result[symbol][state], each row sums to one
+    // a symbol is assigned to the states the process moves to after emitting it.
+    // with a unique initial state or a termination symbol, the first and last state are reserved and should not be used
+    // (unless no other state is left)
+    protected abstract double[][] assignSymbols(NonRedundantLog log, int numberOfStates, boolean useUniqueInitialState, boolean useTerminationSymbol);
+
+    // fills the (normalized) parameters for the given log
+    public void initialize(NonRedundantLog log, int numberOfStates, boolean useUniqueInitialState, boolean useTerminationSymbol, double[] prior, double[][] obsmat, double[][][] transcube) {
+        double[][] assignment = this.assignSymbols(log, numberOfStates, useUniqueInitialState, useTerminationSymbol);
+        int terminationNumber = useTerminationSymbol ? log.getTerminationNumber() : -1;
+        this.seed(log.getProfile(), assignment, useUniqueInitialState, terminationNumber, prior, obsmat, transcube);
+    }
+
+    // seeds the parameters from the profile of the log and a soft assignment of symbols to states
+    // if terminationNumber is not negative, the termination symbol leads to (and is emitted by) the last state only
+    protected void seed(LogProfile profile, double[][] assignment, boolean useUniqueInitialState, int terminationNumber, double[] prior, double[][] obsmat, double[][][] transcube) {
+        int numberOfStates = prior.length;
+        int numberOfSymbols = profile.getNumberOfSymbols();
+        int[] startCounts = profile.getStartCounts();
+
+        // prior: the unique initial state emits the first symbol of each case, otherwise any state may start
+        for (int k = 0; k < numberOfStates; k++) {
+            prior[k] = (useUniqueInitialState && (k > 0)) ? 0.0 : 1.0;
+            for (int y = 0; y < numberOfSymbols; y++)
+                obsmat[k][y] = ((k == 0) || (useUniqueInitialState == false)) ? startCounts[y] : 0.0;
+        }
+        this.normalize(prior);
+
+        // emissions: a state emits the symbols following the symbols assigned to it
+        for (int x = 0; x < numberOfSymbols; x++) {
+            for (int y = 0; y < numberOfSymbols; y++) {
+                int count = profile.getDirectlyFollowsCount(x, y);
+                if (count == 0)
+                    continue;
+                if (y == terminationNumber)
+                    obsmat[numberOfStates - 1][y] += count;
+                else
+                    for (int k = 0; k < numberOfStates; k++)
+                        obsmat[k][y] += count * assignment[x][k];
+            }
+        }
+        for (int k = 0; k < numberOfStates; k++)
+            this.normalize(obsmat[k]);
+
+        // transitions: after emitting x, move to the states of x (or to the termination state if the case ends)
+        double[] target = new double[numberOfStates];
+        for (int x = 0; x < numberOfSymbols; x++) {
+            double terminating = (terminationNumber >= 0) ? profile.getDirectlyFollowsCount(x, terminationNumber) : 0.0;
+            double continuing = 0.0;
+            for (int y = 0; y < numberOfSymbols; y++)
+                if (y != terminationNumber)
+                    continuing += profile.getDirectlyFollowsCount(x, y);
+            if (terminating + continuing == 0.0)
+                continuing = 1.0;
+            for (int j = 0; j < numberOfStates; j++)
+                target[j] = continuing * assignment[x][j];
+            target[numberOfStates - 1] += terminating;
+            for (int k = 0; k < numberOfStates; k++) {
+                System.arraycopy(target, 0, transcube[k][x], 0, numberOfStates);
+                this.normalize(transcube[k][x]);
+            }
+        }
+    }
+
+    // assigns symbols to states by clustering their feature vectors (rows of "features" for which "clustered" is set)
+    // the clusters are mapped to the states that are not reserved for the initial and termination state.
+    // each clustered symbol keeps a fraction "softness" of its assignment for the other clusters, the other symbols are spread uniformly
+    protected double[][] clusterSymbols(double[][] features, boolean[] clustered, int terminationNumber, int numberOfStates, boolean useUniqueInitialState, boolean useTerminationSymbol) {
+        int numberOfSymbols = features.length;
+
+        // states available for clustering (initial and termination state are excluded if possible)
+        int firstState = (useUniqueInitialState && (numberOfStates > 1)) ? 1 : 0;
+        int lastState = (useTerminationSymbol && (numberOfStates - 1 > firstState)) ? numberOfStates - 1 : numberOfStates;
+        if (useTerminationSymbol && (lastState == numberOfStates) && (numberOfStates > 1)) {
+            // only the initial and the termination state exist: the initial state emits all other symbols
+            firstState = 0;
+            lastState = numberOfStates - 1;
+        }
+        int numberOfClusters = lastState - firstState;
+
+        int[] cluster = this.kMeans(features, clustered, numberOfClusters);
+
+        // soft assignment
+        double[][] assignment = new double[numberOfSymbols][numberOfStates];
+        for (int x = 0; x < numberOfSymbols; x++) {
+            if (useTerminationSymbol && (x == terminationNumber)) {
+                assignment[x][numberOfStates - 1] = 1.0;
+                continue;
+            }
+            for (int c = 0; c < numberOfClusters; c++) {
+                if (clustered[x] == false)
+                    assignment[x][firstState + c] = 1.0 / numberOfClusters;
+                else
+                    assignment[x][firstState + c] = ((c == cluster[x]) ? (1.0 - this.softness) : 0.0) + this.softness / numberOfClusters;
+            }
+        }
+        return assignment;
+    }
+
+    // clusters the selected rows with k-means (k-means++ seeding). returns the cluster of each row (-1 if not selected)
+    protected int[] kMeans(double[][] points, boolean[] selected, int numberOfClusters) {
+        int dimension = points[0].length;
+        int[] result = new int[points.length];
+        Arrays.fill(result, -1);
+
+        int numberOfPoints = 0;
+        for (int p = 0; p < points.length; p++)
+            if (selected[p])
+                numberOfPoints++;
+        if (numberOfPoints == 0)
+            return result;
+
+        // k-means++ seeding
+        double[][] centroids = new double[numberOfClusters][];
+        double[] distances = new double[points.length];
+        for (int c = 0; c < numberOfClusters; c++) {
+            int chosen = -1;
+            if (c == 0) {
+                int index = this.random.nextInt(numberOfPoints);
+                for (int p = 0; p < points.length; p++)
+                    if (selected[p] && (index-- == 0))
+                        chosen = p;
+            } else {
+                double total = 0.0;
+                for (int p = 0; p < points.length; p++) {
+                    if (selected[p] == false)
+                        continue;
+                    distances[p] = Double.POSITIVE_INFINITY;
+                    for (int d = 0; d < c; d++)
+                        distances[p] = Math.min(distances[p], squaredDistance(points[p], centroids[d]));
+                    total += distances[p];
+                }
+                double threshold = this.random.nextDouble() * total;
+                for (int p = 0; p < points.length; p++) {
+                    if (selected[p] == false)
+                        continue;
+                    chosen = p;
+                    threshold -= distances[p];
+                    if (threshold < 0.0)
+                        break;
+                }
+            }
+            centroids[c] = Arrays.copyOf(points[chosen], dimension);
+        }
+
+        // Lloyd iterations
+        for (int iteration = 0; iteration < this.maximumClusteringIterations; iteration++) {
+            boolean changed = false;
+            for (int p = 0; p < points.length; p++) {
+                if (selected[p] == false)
+                    continue;
+                int best = 0;
+                double bestDistance = Double.POSITIVE_INFINITY;
+                for (int c = 0; c < numberOfClusters; c++) {
+                    double distance = squaredDistance(points[p], centroids[c]);
+                    if (distance < bestDistance) {
+                        best = c;
+                        bestDistance = distance;
+                    }
+                }
+                if (result[p] != best) {
+                    result[p] = best;
+                    changed = true;
+                }
+            }
+            if (changed == false)
+                break;
+
+            // move centroids (empty clusters keep their centroid)
+            int[] sizes = new int[numberOfClusters];
+            double[][] sums = new double[numberOfClusters][dimension];
+            for (int p = 0; p < points.length; p++) {
+                if (selected[p] == false)
+                    continue;
+                sizes[result[p]]++;
+                for (int d = 0; d < dimension; d++)
+                    sums[result[p]][d] += points[p][d];
+            }
+            for (int c = 0; c < numberOfClusters; c++)
+                if (sizes[c] > 0)
+                    for (int d = 0; d < dimension; d++)
+                        centroids[c][d] = sums[c][d] / sizes[c];
+        }
+        return result;
+    }
+
+    private static double squaredDistance(double[] a, double[] b) {
+        double result = 0.0;
+        for (int i = 0; i < a.length; i++)
+            result += (a[i] - b[i]) * (a[i] - b[i]);
+        return result;
+    }
+
+    // normalizes a row, then applies smoothing and noise (rows without mass become uniform)
+    protected void normalize(double[] row) {
+        double sum = 0.0;
+        for (int i = 0; i < row.length; i++)
+            sum += row[i];
+        for (int i = 0; i < row.length; i++) {
+            double value = (sum > 0.0) ? (row[i] / sum) : (1.0 / row.length);
+            value = (1.0 - this.smoothing) * value + this.smoothing / row.length;
+            row[i] = value * (1.0 + this.noise * (2.0 * this.random.nextDouble() - 1.0));
+        }
+        sum = 0.0;
+        for (int i = 0; i < row.length; i++)
+            sum += row[i];
+        for (int i = 0; i < row.length; i++)
+            row[i] = row[i] / sum;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public double getSoftness() {
+        return softness;
+    }
+
+    public void setSoftness(double softness) {
+        this.softness = softness;
+    }
+
+    public int getMaximumClusteringIterations() {
+        return maximumClusteringIterations;
+    }
+
+    public void setMaximumClusteringIterations(int maximumClusteringIterations) {
+        this.maximumClusteringIterations = maximumClusteringIterations;
+    }
+
+    public double getNoise() {
+        return noise;
+    }
+
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Algorithm;
+
+import java.util.Arrays;
+
+import Framework.Models.Log.SymbolTable;
+
+// belief state of a single running case under an EmMapResult
+// the state distribution is advanced with each observed event (O(k^2) per event), so predicting after every event of a
+// case does not replay its history. sessions only read the model and can be used concurrently, each by a single thread
+public class PredictionSession {
+
+    private EmMapResult model;
+    private SymbolTable symbols;
+    // current distribution over states and a buffer for the next one
+    private double[] stateDistribution;
+    private double[] nextStateDistribution;
+    // number of events observed since the start of the case
+    private int numberOfEvents;
+
+
+    public PredictionSession(EmMapResult model) {
+        this.model = model;
+        this.symbols = model.log.getSymbolTable();
+        this.stateDistribution = Arrays.copyOf(model.prior, model.numberOfStates);
+        this.nextStateDistribution = new double[model.numberOfStates];
+        this.numberOfEvents = 0;
+    }
+
+    // creates an independent copy of this session (e.g., to try alternative continuations of a case)
+    public PredictionSession copy() {
+        PredictionSession result = new PredictionSession(this.model);
+        System.arraycopy(this.stateDistribution, 0, result.stateDistribution, 0, this.stateDistribution.length);
+        result.numberOfEvents = this.numberOfEvents;
+        return result;
+    }
+
+    // goes back to the start of a case
+    public void reset() {
+        System.arraycopy(this.model.prior, 0, this.stateDistribution, 0, this.stateDistribution.length);
+        this.numberOfEvents = 0;
+    }
+
+    // advances the state distribution by one event
+    public void observe(String symbol) {
+        int numericalSymbol = this.symbols.getNumber(symbol);
+        if (numericalSymbol < 0)
+            throw new IllegalArgumentException("History contains an event not found of the original log!");
+        this.observe(numericalSymbol);
+    }
+
+    // same as above, for a symbol number of the model's log
+    public void observe(int symbol) {
+        if ((symbol < 0) || (symbol >= this.model.numberOfSymbols))
+            throw new IllegalArgumentException("History contains an event not found of the original log!");
+
+        int numberOfStates = this.model.numberOfStates;
+        double[] next = this.nextStateDistribution;
+        Arrays.fill(next, 0.0);
+        for (int k = 0; k < numberOfStates; k++) {
+            double weight = this.stateDistribution[k];
+            if (weight == 0.0)
+                continue;
+            double[] transitions = this.model.transcube[k][symbol];
+            for (int j = 0; j < numberOfStates; j++)
+                next[j] += weight * transitions[j];
+        }
+        // renormalize to avoid rounding errors
+        double sum = 0.0;
+        for (int j = 0; j < numberOfStates; j++)
+            sum += next[j];
+        for (int j = 0; j < numberOfStates; j++)
+            next[j] = next[j] / sum;
+
+        this.nextStateDistribution = this.stateDistribution;
+        this.stateDistribution = next;
+        this.numberOfEvents++;
+    }
+
+    // advances the state distribution by a sequence of events (null is treated as empty)
+    public void observe(String[] history) {
+        if (history == null)
+            return;
+        for (int i = 0; i < history.length; i++)
+            this.observe(history[i]);
+    }
+
+    // distribution over the symbol emitted next (indexed by symbol number)
+    public double[] getDistributionOverNextSymbol() {
+        double[] symbolDistribution = new double[this.model.numberOfSymbols];
+        this.getDistributionOverNextSymbol(symbolDistribution);
+        return symbolDistribution;
+    }
+
+    // same as above, but writes the distribution into the given array
+    public void getDistributionOverNextSymbol(double[] symbolDistribution) {
+        Arrays.fill(symbolDistribution, 0, this.model.numberOfSymbols, 0.0);
+        for (int j = 0; j < this.model.numberOfStates; j++) {
+            double weight = this.stateDistribution[j];
+            if (weight == 0.0)
+                continue;
+            double[] emissions = this.model.obsmat[j];
+            for (int i = 0; i < this.model.numberOfSymbols; i++)
+                symbolDistribution[i] += weight * emissions[i];
+        }
+    }
+
+    // probability that the given symbol is emitted next
+    public double getProbabilityOfNextSymbol(String symbol) {
+        int numericalSymbol = this.symbols.getNumber(symbol);
+        if (numericalSymbol < 0)
+            throw new IllegalArgumentException("Symbol not found in the original log!");
+        double probability = 0.0;
+        for (int j = 0; j < this.model.numberOfStates; j++)
+            probability += this.stateDistribution[j] * this.model.obsmat[j][numericalSymbol];
+        return probability;
+    }
+
+    // distributions over all symbols for each of the subsequent steps, given the events observed so far
+    public double[][] getSymbolDistributionsBySteps(int numberOfSteps) {
+        return this.model.getSymbolDistributionsBySteps(this.stateDistribution, numberOfSteps);
+    }
+
+    // expected number of events until the case ends (not counting the termination symbol)
+    public double getExpectedRemainingLength() {
+        return this.model.getExpectedRemainingLength(this.stateDistribution);
+    }
+
+    // probabilities that the case ends after at most n more events, for n = 0 to maximumEvents
+    public double[] getCompletionProbabilities(int maximumEvents) {
+        return this.model.getCompletionProbabilities(this.stateDistribution, maximumEvents);
+    }
+
+    // returns a copy of the current distribution over states
+    public double[] getStateDistribution() {
+        return Arrays.copyOf(this.stateDistribution, this.stateDistribution.length);
+    }
+
+    public int getNumberOfEvents() {
+        return this.numberOfEvents;
+    }
+
+    public EmMapResult getModel() {
+        return this.model;
+    }
+
+}
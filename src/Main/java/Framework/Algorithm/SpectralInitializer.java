@@ -0,0 +1,612 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Algorithm;
+
+import java.util.Random;
+
+import Framework.Models.Log.NonRedundantLog;
+import Framework.Utils.LongIntHashMap;
+
+// spectral (method-of-moments) estimation of the parameters, following the observable operator construction of
+// Hsu, Kakade and Zhang in the eigendecomposition form of Anandkumar, Hsu and Kakade. three consecutive symbols
+// x1, x2, x3 are independent given the state h emitting x2. with U3, U1 the top singular vectors of the moments
+// P31 = P(x3, x1) (truncated SVD), the observable operators B_x = (U3^T P3x1 U1) (U3^T P31 U1)^-1 = S diag(obsmat[.][x]) S^-1
+// share the eigenvectors S, so the emissions of the states are the eigenvalues of the B_x, read off a common Schur basis.
+// (this step assumes, like the HMMs of Hsu, Kakade and Zhang, that the next state does not depend on the emitted symbol.
+// otherwise the emissions are biased, the transitions below are recovered for each symbol either way)
+// the transitions (and b1, the distribution of the state after the first symbol) are recovered from the same moments
+// by least squares against the emissions. b_inf is not needed: the end of a case is the move to the termination state.
+// the estimates are projected onto valid parameters by clipping negative values and normalizing each row
+// (with the smoothing and noise of ParameterInitializer).
+// the unique initial state and the termination state never emit a middle symbol, the remaining states are recovered.
+// if the moments do not determine a model (e.g., there is no case with three symbols), the symbols are clustered by
+// their coordinates in U1 instead and the parameters are seeded from the log profile (see ParameterInitializer)
+public class SpectralInitializer extends ParameterInitializer {
+
+    // singular values below this threshold (relative to the largest one, both squared) are ignored
+    private static final double RANK_THRESHOLD = 1e-10;
+    // convergence threshold and maximum number of sweeps of the Jacobi eigenvalue algorithm
+    private static final double JACOBI_THRESHOLD = 1e-14;
+    private static final int JACOBI_SWEEPS = 100;
+    // additional vectors and number of iterations of the subspace iteration computing the singular vectors
+    private static final int OVERSAMPLING = 5;
+    private static final int SUBSPACE_ITERATIONS = 20;
+    // convergence threshold and maximum number of iterations of the QR algorithm computing the Schur basis
+    private static final double SCHUR_THRESHOLD = 1e-20;
+    private static final int SCHUR_ITERATIONS = 2000;
+    // pivots below this threshold (relative to the largest entry) make a matrix singular
+    private static final double PIVOT_THRESHOLD = 1e-12;
+
+
+    public SpectralInitializer() {
+        super();
+    }
+
+    public SpectralInitializer(Random random) {
+        super(random);
+    }
+
+    // fast approximate model: the spectral estimate is returned without EM iterations
+    // (likelihood and model selection statistics are computed for it by a single forward pass)
+    public static EmMapResult estimate(NonRedundantLog log, int numberOfStates) {
+        SpectralInitializer initializer = new SpectralInitializer();
+        initializer.setNoise(0.0);
+        EmMapAlgorithm algo = new EmMapAlgorithm(log, numberOfStates);
+        algo.setInitializer(initializer);
+        algo.setMaximumIterations(0);
+        return algo.runAlgorithm();
+    }
+
+    public void initialize(NonRedundantLog log, int numberOfStates, boolean useUniqueInitialState, boolean useTerminationSymbol, double[] prior, double[][] obsmat, double[][][] transcube) {
+        int numberOfSymbols = log.getNumberOfUniqueSymbols();
+        int terminationNumber = log.getTerminationNumber();
+        // states recovered from the moments (all but the initial and termination state)
+        int firstState = (useUniqueInitialState && (numberOfStates > 1)) ? 1 : 0;
+        int lastState = (useTerminationSymbol && (numberOfStates - 1 > firstState)) ? numberOfStates - 1 : numberOfStates;
+        boolean hasTerminationState = lastState < numberOfStates;
+
+        double[][][] singularVectors = (lastState > firstState) ? this.computeSingularVectors(log, lastState - firstState) : null;
+        double[][] emissions = (singularVectors != null) ? this.recoverEmissions(log, singularVectors[0], singularVectors[1]) : null;
+        if (emissions == null) {
+            super.initialize(log, numberOfStates, useUniqueInitialState, useTerminationSymbol, prior, obsmat, transcube);
+            return;
+        }
+        int rank = emissions.length;
+        double[][] u1 = singularVectors[1];
+
+        // emissions of the recovered states, followed by the termination state (if any)
+        int numberOfTargets = rank + (hasTerminationState ? 1 : 0);
+        double[][] targetEmissions = new double[numberOfTargets][];
+        for (int k = 0; k < rank; k++)
+            targetEmissions[k] = normalized(emissions[k]);
+        if (hasTerminationState) {
+            targetEmissions[rank] = new double[numberOfSymbols];
+            targetEmissions[rank][terminationNumber] = 1.0;
+        }
+        int[] stateOfTarget = new int[numberOfTargets];
+        for (int k = 0; k < rank; k++)
+            stateOfTarget[k] = firstState + k;
+        if (hasTerminationState)
+            stateOfTarget[rank] = numberOfStates - 1;
+
+        // moments projected onto the emissions (for x2 and x3) and onto U1 (for x1)
+        double[][] middle = new double[rank][rank];
+        double[][][] following = new double[numberOfSymbols][][];
+        double[][] firstFollowing = new double[numberOfSymbols][];
+        double[] first = new double[numberOfTargets];
+        for (int c = 0; c < log.getNumberOfUniqueCases(); c++) {
+            int length = log.getLengthOfCase(c);
+            double multiplicity = log.getCaseMultiplicity(c);
+            int x0 = log.getNumericalLogEntry(c, 0);
+            for (int i = 0; i < numberOfTargets; i++)
+                first[i] += multiplicity * targetEmissions[i][x0];
+            if (length > 1) {
+                int x1 = log.getNumericalLogEntry(c, 1);
+                if (firstFollowing[x0] == null)
+                    firstFollowing[x0] = new double[numberOfTargets];
+                for (int i = 0; i < numberOfTargets; i++)
+                    firstFollowing[x0][i] += multiplicity * targetEmissions[i][x1];
+            }
+            for (int t = 0; t + 2 < length; t++) {
+                int a = log.getNumericalLogEntry(c, t);
+                int x = log.getNumericalLogEntry(c, t + 1);
+                int y = log.getNumericalLogEntry(c, t + 2);
+                if (following[x] == null)
+                    following[x] = new double[numberOfTargets][rank];
+                for (int i = 0; i < numberOfTargets; i++) {
+                    double weight = multiplicity * targetEmissions[i][y];
+                    if (weight != 0.0)
+                        for (int j = 0; j < rank; j++)
+                            following[x][i][j] += weight * u1[a][j];
+                }
+                for (int i = 0; i < rank; i++) {
+                    double weight = multiplicity * targetEmissions[i][x];
+                    if (weight != 0.0)
+                        for (int j = 0; j < rank; j++)
+                            middle[i][j] += weight * u1[a][j];
+                }
+            }
+        }
+
+        // least squares against the emissions: (E^T E)^-1 E^T. middle = diag(w) M1^T U1 (w = weights of the states)
+        double[][] targetGramInverse = invert(gram(targetEmissions, numberOfTargets));
+        double[][] emissionGramInverse = invert(gram(targetEmissions, rank));
+        double[][] middleInverse = (emissionGramInverse != null) ? invert(multiply(emissionGramInverse, middle)) : null;
+        if ((targetGramInverse == null) || (middleInverse == null)) {
+            super.initialize(log, numberOfStates, useUniqueInitialState, useTerminationSymbol, prior, obsmat, transcube);
+            return;
+        }
+
+        // emissions (the initial state emits the first symbols, the termination state the termination symbol)
+        for (int k = 0; k < numberOfStates; k++)
+            for (int y = 0; y < numberOfSymbols; y++)
+                obsmat[k][y] = 0.0;
+        for (int k = 0; k < rank; k++)
+            System.arraycopy(emissions[k], 0, obsmat[firstState + k], 0, numberOfSymbols);
+        if (firstState > 0) {
+            int[] startCounts = log.getProfile().getStartCounts();
+            for (int y = 0; y < numberOfSymbols; y++)
+                obsmat[0][y] = startCounts[y];
+        }
+        if (hasTerminationState)
+            obsmat[numberOfStates - 1][terminationNumber] = 1.0;
+
+        // transitions: the joint distribution of the next state and the current state emitting x is
+        // (E^T E)^-1 E^T P3x1 U1 (diag(w) M1^T U1)^-1, its columns are normalized
+        for (int k = 0; k < numberOfStates; k++)
+            for (int x = 0; x < numberOfSymbols; x++)
+                for (int j = 0; j < numberOfStates; j++)
+                    transcube[k][x][j] = 0.0;
+        for (int x = 0; x < numberOfSymbols; x++) {
+            if (following[x] == null)
+                continue;
+            double[][] joint = multiply(multiply(targetGramInverse, following[x]), middleInverse);
+            for (int k = 0; k < rank; k++)
+                for (int i = 0; i < numberOfTargets; i++)
+                    transcube[firstState + k][x][stateOfTarget[i]] = Math.max(0.0, joint[i][k]);
+        }
+
+        // b1: the state after the first symbol (unique initial state) or the first state
+        for (int k = 0; k < numberOfStates; k++)
+            prior[k] = (firstState > 0) && (k > 0) ? 0.0 : 1.0;
+        if (firstState > 0) {
+            for (int x = 0; x < numberOfSymbols; x++) {
+                if (firstFollowing[x] == null)
+                    continue;
+                double[] next = multiply(targetGramInverse, firstFollowing[x]);
+                for (int i = 0; i < numberOfTargets; i++)
+                    transcube[0][x][stateOfTarget[i]] = Math.max(0.0, next[i]);
+            }
+        } else {
+            double[] start = multiply(targetGramInverse, first);
+            for (int k = 0; k < numberOfStates; k++)
+                prior[k] = 0.0;
+            for (int i = 0; i < numberOfTargets; i++)
+                prior[stateOfTarget[i]] = Math.max(0.0, start[i]);
+        }
+
+        // projection onto valid parameters
+        this.normalize(prior);
+        for (int k = 0; k < numberOfStates; k++) {
+            this.normalize(obsmat[k]);
+            for (int x = 0; x < numberOfSymbols; x++)
+                this.normalize(transcube[k][x]);
+        }
+    }
+
+    // used if the moments do not determine a model: symbols are clustered by their coordinates in U1
+    protected double[][] assignSymbols(NonRedundantLog log, int numberOfStates, boolean useUniqueInitialState, boolean useTerminationSymbol) {
+        int numberOfSymbols = log.getNumberOfUniqueSymbols();
+        int terminationNumber = log.getTerminationNumber();
+        double[][][] singularVectors = this.computeSingularVectors(log, numberOfStates);
+        double[][] embeddings = (singularVectors != null) ? singularVectors[1] : new double[numberOfSymbols][1];
+
+        // normalize embeddings (only their direction matters)
+        boolean[] clustered = new boolean[numberOfSymbols];
+        for (int x = 0; x < numberOfSymbols; x++) {
+            double norm = 0.0;
+            for (int d = 0; d < embeddings[x].length; d++)
+                norm += embeddings[x][d] * embeddings[x][d];
+            norm = Math.sqrt(norm);
+            clustered[x] = (norm > 0.0) && ((useTerminationSymbol == false) || (x != terminationNumber));
+            if (norm > 0.0)
+                for (int d = 0; d < embeddings[x].length; d++)
+                    embeddings[x][d] /= norm;
+        }
+
+        return this.clusterSymbols(embeddings, clustered, terminationNumber, numberOfStates, useUniqueInitialState, useTerminationSymbol);
+    }
+
+    // computes the top (at most "rank") left and right singular vectors of P31 = P(x3, x1) as {U3, U1}, indexed [symbol][vector]
+    // P31 is kept sparse, the singular vectors are found by subspace iteration. returns null if there are no such moments
+    public double[][][] computeSingularVectors(NonRedundantLog log, int rank) {
+        int n = log.getNumberOfUniqueSymbols();
+
+        // counts of x1 followed by x3 two positions later, keyed by (x3, x1)
+        LongIntHashMap pairs = new LongIntHashMap();
+        for (int c = 0; c < log.getNumberOfUniqueCases(); c++) {
+            int length = log.getLengthOfCase(c);
+            int multiplicity = log.getCaseMultiplicity(c);
+            for (int t = 0; t + 2 < length; t++)
+                pairs.add(LongIntHashMap.key(log.getNumericalLogEntry(c, t + 2), log.getNumericalLogEntry(c, t)), multiplicity);
+        }
+        if (pairs.size() == 0)
+            return null;
+        long[] keys = pairs.getKeys();
+        int[] rows = new int[keys.length];
+        int[] columns = new int[keys.length];
+        double[] values = new double[keys.length];
+        for (int e = 0; e < keys.length; e++) {
+            rows[e] = (int) (keys[e] >>> 32);
+            columns[e] = (int) keys[e];
+            values[e] = pairs.get(keys[e], 0);
+        }
+
+        // subspace iteration on P31 P31^T, starting from random vectors
+        int p = Math.min(n, rank + OVERSAMPLING);
+        double[][] q = new double[n][p];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < p; j++)
+                q[i][j] = this.random.nextGaussian();
+        orthonormalize(q);
+        double[][] z = new double[n][p];
+        for (int iteration = 0; iteration <= SUBSPACE_ITERATIONS; iteration++) {
+            // z = P31^T q
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < p; j++)
+                    z[i][j] = 0.0;
+            for (int e = 0; e < keys.length; e++)
+                for (int j = 0; j < p; j++)
+                    z[columns[e]][j] += values[e] * q[rows[e]][j];
+            if (iteration == SUBSPACE_ITERATIONS)
+                break;
+            // q = orth(P31 z)
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < p; j++)
+                    q[i][j] = 0.0;
+            for (int e = 0; e < keys.length; e++)
+                for (int j = 0; j < p; j++)
+                    q[rows[e]][j] += values[e] * z[columns[e]][j];
+            orthonormalize(q);
+        }
+
+        // Rayleigh-Ritz: eigenvectors of z^T z = q^T P31 P31^T q give the singular vectors within the subspace
+        double[][] small = new double[p][p];
+        for (int i = 0; i < p; i++)
+            for (int j = 0; j < p; j++)
+                for (int l = 0; l < n; l++)
+                    small[i][j] += z[l][i] * z[l][j];
+        double[] eigenvalues = new double[p];
+        double[][] eigenvectors = new double[p][p];
+        symmetricEigen(small, eigenvalues, eigenvectors);
+
+        // select the largest eigenvalues
+        int[] order = new int[Math.min(rank, p)];
+        boolean[] used = new boolean[p];
+        int selected = 0;
+        double largest = 0.0;
+        for (int r = 0; r < order.length; r++) {
+            int best = -1;
+            for (int i = 0; i < p; i++)
+                if ((used[i] == false) && ((best < 0) || (eigenvalues[i] > eigenvalues[best])))
+                    best = i;
+            used[best] = true;
+            if (r == 0)
+                largest = eigenvalues[best];
+            if ((eigenvalues[best] <= 0.0) || (eigenvalues[best] <= RANK_THRESHOLD * largest))
+                break;
+            order[selected++] = best;
+        }
+        if (selected == 0)
+            return null;
+
+        // U3 = q V, U1 = P31^T U3 diag(1 / sigma) = z V diag(1 / sigma)
+        double[][] u3 = new double[n][selected];
+        double[][] u1 = new double[n][selected];
+        for (int r = 0; r < selected; r++) {
+            double sigma = Math.sqrt(eigenvalues[order[r]]);
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < p; j++) {
+                    u3[i][r] += q[i][j] * eigenvectors[j][order[r]];
+                    u1[i][r] += z[i][j] * eigenvectors[j][order[r]] / sigma;
+                }
+        }
+        return new double[][][]{u3, u1};
+    }
+
+    // emissions[state][symbol] of the states recovered from the operators B_x (negative values are clipped),
+    // or null if U3^T P31 U1 is singular
+    private double[][] recoverEmissions(NonRedundantLog log, double[][] u3, double[][] u1) {
+        int n = log.getNumberOfUniqueSymbols();
+        int rank = u3[0].length;
+
+        // W_x = U3^T P3x1 U1 for each middle symbol x and their sum U3^T P31 U1
+        double[][][] operators = new double[n][][];
+        double[][] sum = new double[rank][rank];
+        for (int c = 0; c < log.getNumberOfUniqueCases(); c++) {
+            int length = log.getLengthOfCase(c);
+            double multiplicity = log.getCaseMultiplicity(c);
+            for (int t = 0; t + 2 < length; t++) {
+                int a = log.getNumericalLogEntry(c, t);
+                int x = log.getNumericalLogEntry(c, t + 1);
+                int y = log.getNumericalLogEntry(c, t + 2);
+                if (operators[x] == null)
+                    operators[x] = new double[rank][rank];
+                for (int i = 0; i < rank; i++) {
+                    double weight = multiplicity * u3[y][i];
+                    for (int j = 0; j < rank; j++)
+                        operators[x][i][j] += weight * u1[a][j];
+                }
+            }
+        }
+        for (int x = 0; x < n; x++)
+            if (operators[x] != null)
+                for (int i = 0; i < rank; i++)
+                    for (int j = 0; j < rank; j++)
+                        sum[i][j] += operators[x][i][j];
+        double[][] sumInverse = invert(sum);
+        if (sumInverse == null)
+            return null;
+
+        // B_x = W_x (U3^T P31 U1)^-1 share a Schur basis, found for a random combination with distinct eigenvalues
+        double[][] combination = new double[rank][rank];
+        for (int x = 0; x < n; x++) {
+            if (operators[x] == null)
+                continue;
+            double eta = this.random.nextDouble();
+            for (int i = 0; i < rank; i++)
+                for (int j = 0; j < rank; j++)
+                    combination[i][j] += eta * operators[x][i][j];
+        }
+        double[][] basis = schurBasis(multiply(combination, sumInverse));
+
+        // the emission of x by state k is the k-th diagonal entry of basis^T B_x basis
+        double[][] right = multiply(sumInverse, basis);
+        double[][] emissions = new double[rank][n];
+        for (int x = 0; x < n; x++) {
+            if (operators[x] == null)
+                continue;
+            double[][] product = multiply(operators[x], right);
+            for (int k = 0; k < rank; k++) {
+                double value = 0.0;
+                for (int i = 0; i < rank; i++)
+                    value += basis[i][k] * product[i][k];
+                emissions[k][x] = Math.max(0.0, value);
+            }
+        }
+        return emissions;
+    }
+
+    // orthonormal basis of the upper triangular (Schur) form of a matrix with real eigenvalues (unshifted QR algorithm)
+    private static double[][] schurBasis(double[][] matrix) {
+        int n = matrix.length;
+        double[][] a = matrix;
+        double[][] basis = new double[n][n];
+        for (int i = 0; i < n; i++)
+            basis[i][i] = 1.0;
+        for (int iteration = 0; iteration < SCHUR_ITERATIONS; iteration++) {
+            double lower = 0.0;
+            double total = 0.0;
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < n; j++) {
+                    total += a[i][j] * a[i][j];
+                    if (i > j)
+                        lower += a[i][j] * a[i][j];
+                }
+            if (lower <= SCHUR_THRESHOLD * total)
+                break;
+            // a = q r, continue with r q = q^T a q
+            double[][] q = new double[n][n];
+            for (int i = 0; i < n; i++)
+                System.arraycopy(a[i], 0, q[i], 0, n);
+            orthonormalize(q);
+            a = multiply(transpose(q), multiply(a, q));
+            basis = multiply(basis, q);
+        }
+        return basis;
+    }
+
+    // orthonormalizes the columns of a matrix in place (modified Gram-Schmidt). dependent columns are set to zero
+    private static void orthonormalize(double[][] a) {
+        int n = a.length;
+        int m = a[0].length;
+        for (int j = 0; j < m; j++) {
+            double before = 0.0;
+            for (int i = 0; i < n; i++)
+                before += a[i][j] * a[i][j];
+            for (int k = 0; k < j; k++) {
+                double dot = 0.0;
+                for (int i = 0; i < n; i++)
+                    dot += a[i][k] * a[i][j];
+                for (int i = 0; i < n; i++)
+                    a[i][j] -= dot * a[i][k];
+            }
+            double norm = 0.0;
+            for (int i = 0; i < n; i++)
+                norm += a[i][j] * a[i][j];
+            double scale = (norm > PIVOT_THRESHOLD * before) ? 1.0 / Math.sqrt(norm) : 0.0;
+            for (int i = 0; i < n; i++)
+                a[i][j] *= scale;
+        }
+    }
+
+    // inverse by Gauss-Jordan elimination with partial pivoting, or null if the matrix is singular
+    private static double[][] invert(double[][] matrix) {
+        int n = matrix.length;
+        double[][] a = new double[n][2 * n];
+        double largest = 0.0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                a[i][j] = matrix[i][j];
+                largest = Math.max(largest, Math.abs(matrix[i][j]));
+            }
+            a[i][n + i] = 1.0;
+        }
+        for (int column = 0; column < n; column++) {
+            int pivot = column;
+            for (int i = column + 1; i < n; i++)
+                if (Math.abs(a[i][column]) > Math.abs(a[pivot][column]))
+                    pivot = i;
+            if (Math.abs(a[pivot][column]) <= PIVOT_THRESHOLD * largest)
+                return null;
+            double[] row = a[pivot];
+            a[pivot] = a[column];
+            a[column] = row;
+            double factor = 1.0 / row[column];
+            for (int j = 0; j < 2 * n; j++)
+                row[j] *= factor;
+            for (int i = 0; i < n; i++) {
+                if ((i == column) || (a[i][column] == 0.0))
+                    continue;
+                double f = a[i][column];
+                for (int j = 0; j < 2 * n; j++)
+                    a[i][j] -= f * row[j];
+            }
+        }
+        double[][] result = new double[n][n];
+        for (int i = 0; i < n; i++)
+            System.arraycopy(a[i], n, result[i], 0, n);
+        return result;
+    }
+
+    // Gram matrix of the first "size" rows
+    private static double[][] gram(double[][] rows, int size) {
+        double[][] result = new double[size][size];
+        for (int i = 0; i < size; i++)
+            for (int j = i; j < size; j++) {
+                double sum = 0.0;
+                for (int l = 0; l < rows[i].length; l++)
+                    sum += rows[i][l] * rows[j][l];
+                result[i][j] = sum;
+                result[j][i] = sum;
+            }
+        return result;
+    }
+
+    private static double[][] multiply(double[][] a, double[][] b) {
+        double[][] result = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int l = 0; l < b.length; l++) {
+                if (a[i][l] == 0.0)
+                    continue;
+                for (int j = 0; j < b[0].length; j++)
+                    result[i][j] += a[i][l] * b[l][j];
+            }
+        return result;
+    }
+
+    private static double[] multiply(double[][] a, double[] v) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++)
+            for (int j = 0; j < v.length; j++)
+                result[i] += a[i][j] * v[j];
+        return result;
+    }
+
+    private static double[][] transpose(double[][] a) {
+        double[][] result = new double[a[0].length][a.length];
+        for (int i = 0; i < a.length; i++)
+            for (int j = 0; j < a[0].length; j++)
+                result[j][i] = a[i][j];
+        return result;
+    }
+
+    // copy of a row scaled to sum one (rows without mass stay zero)
+    private static double[] normalized(double[] row) {
+        double sum = 0.0;
+        for (int i = 0; i < row.length; i++)
+            sum += row[i];
+        double[] result = new double[row.length];
+        if (sum > 0.0)
+            for (int i = 0; i < row.length; i++)
+                result[i] = row[i] / sum;
+        return result;
+    }
+
+    // eigenvalues and eigenvectors (columns) of a symmetric matrix by the cyclic Jacobi method. the matrix is overwritten
+    private static void symmetricEigen(double[][] a, double[] eigenvalues, double[][] eigenvectors) {
+        int n = a.length;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++)
+                eigenvectors[i][j] = 0.0;
+            eigenvectors[i][i] = 1.0;
+        }
+
+        for (int sweep = 0; sweep < JACOBI_SWEEPS; sweep++) {
+            double offDiagonal = 0.0;
+            double total = 0.0;
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < n; j++) {
+                    total += a[i][j] * a[i][j];
+                    if (i != j)
+                        offDiagonal += a[i][j] * a[i][j];
+                }
+            if (offDiagonal <= JACOBI_THRESHOLD * total)
+                break;
+
+            for (int p = 0; p < n - 1; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    if (a[p][q] == 0.0)
+                        continue;
+                    // rotation annihilating a[p][q]
+                    double theta = (a[q][q] - a[p][p]) / (2.0 * a[p][q]);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1.0));
+                    if (theta == 0.0)
+                        t = 1.0;
+                    double c = 1.0 / Math.sqrt(t * t + 1.0);
+                    double s = t * c;
+                    for (int k = 0; k < n; k++) {
+                        double akp = a[k][p];
+                        double akq = a[k][q];
+                        a[k][p] = c * akp - s * akq;
+                        a[k][q] = s * akp + c * akq;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double apk = a[p][k];
+                        double aqk = a[q][k];
+                        a[p][k] = c * apk - s * aqk;
+                        a[q][k] = s * apk + c * aqk;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double vkp = eigenvectors[k][p];
+                        double vkq = eigenvectors[k][q];
+                        eigenvectors[k][p] = c * vkp - s * vkq;
+                        eigenvectors[k][q] = s * vkp + c * vkq;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++)
+            eigenvalues[i] = a[i][i];
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Models.Log;
+
+import java.util.Arrays;
+
+// stores unique cases (sequences of symbol numbers) together with their multiplicity
+// cases are kept in order of their first appearance and are looked up through an open-addressing hash table
+// the hash of a case is a 64-bit polynomial hash that can be computed while the case is read (see extendHash)
+public class CaseTable {
+
+    // multiplier and seed of the polynomial hash
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final long HASH_SEED = 0x2545F4914F6CDD1DL;
+
+    // unique cases, their hashes and their multiplicities (parallel arrays)
+    private int[][] cases;
+    private long[] hashes;
+    private int[] multiplicities;
+    // number of unique cases stored
+    private int size = 0;
+    // hash table holding (case index + 1) of each case, 0 marks an empty slot
+    private int[] slots;
+
+
+    // creates an empty table
+    public CaseTable() {
+        this(16);
+    }
+
+    // creates an empty table able to hold the given number of unique cases without resizing
+    public CaseTable(int expectedCases) {
+        int capacity = Math.max(expectedCases, 16);
+        this.cases = new int[capacity][];
+        this.hashes = new long[capacity];
+        this.multiplicities = new int[capacity];
+        this.slots = new int[tableSizeFor(capacity)];
+    }
+
+    // returns the hash of an empty case
+    public static long initialHash() {
+        return HASH_SEED;
+    }
+
+    // extends the hash of a case by one more symbol
+    public static long extendHash(long hash, int symbol) {
+        return (hash + symbol + 1) * HASH_MULTIPLIER;
+    }
+
+    // computes the hash of the first "length" symbols of a case
+    public static long hash(int[] currentCase, int length) {
+        long hash = initialHash();
+        for (int i = 0; i < length; i++)
+            hash = extendHash(hash, currentCase[i]);
+        return hash;
+    }
+
+    // adds "multiplicity" occurrences of the first "length" symbols of currentCase
+    // returns the index of the (possibly new) unique case
+    // the array is copied if the case is new
+    public int add(int[] currentCase, int length, int multiplicity) {
+        return this.add(currentCase, length, hash(currentCase, length), multiplicity);
+    }
+
+    // same as above, but uses an already computed hash (see extendHash)
+    public int add(int[] currentCase, int length, long hash, int multiplicity) {
+        int slot = this.findSlot(currentCase, length, hash);
+        if (this.slots[slot] != 0) {
+            // case exists already, increase its multiplicity
+            int index = this.slots[slot] - 1;
+            this.multiplicities[index] += multiplicity;
+            return index;
+        }
+
+        // new case. copy it and document it
+        if (this.size == this.cases.length)
+            this.grow();
+        int index = this.size++;
+        this.cases[index] = Arrays.copyOf(currentCase, length);
+        this.hashes[index] = hash;
+        this.multiplicities[index] = multiplicity;
+        this.slots[slot] = index + 1;
+
+        // keep load factor below 0.5
+        if (2 * this.size > this.slots.length)
+            this.rehash(this.slots.length * 2);
+
+        return index;
+    }
+
+    // creates a table containing the cases of this table with new multiplicities (cases with multiplicity 0 are left out)
+    // case arrays are shared with this table, not copied
+    public CaseTable createView(int[] newMultiplicities) {
+        int newSize = 0;
+        for (int index = 0; index < this.size; index++)
+            if (newMultiplicities[index] > 0)
+                newSize++;
+
+        CaseTable result = new CaseTable(newSize);
+        for (int index = 0; index < this.size; index++) {
+            if (newMultiplicities[index] > 0) {
+                int newIndex = result.size++;
+                result.cases[newIndex] = this.cases[index];
+                result.hashes[newIndex] = this.hashes[index];
+                result.multiplicities[newIndex] = newMultiplicities[index];
+            }
+        }
+        result.rehash(result.slots.length);
+        return result;
+    }
+
+    // returns the index of the first "length" symbols of currentCase, or -1 if the case is unknown
+    public int indexOf(int[] currentCase, int length) {
+        int slot = this.findSlot(currentCase, length, hash(currentCase, length));
+        return this.slots[slot] - 1;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    // returns the case with the given index. the array is shared and must not be modified
+    public int[] getCase(int index) {
+        return this.cases[index];
+    }
+
+    public long getHash(int index) {
+        return this.hashes[index];
+    }
+
+    public int getMultiplicity(int index) {
+        return this.multiplicities[index];
+    }
+
+    public void setMultiplicity(int index, int multiplicity) {
+        this.multiplicities[index] = multiplicity;
+    }
+
+    // returns the slot containing the given case or the empty slot where it should be inserted
+    private int findSlot(int[] currentCase, int length, long hash) {
+        int mask = this.slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (this.slots[slot] != 0) {
+            int index = this.slots[slot] - 1;
+            if ((this.hashes[index] == hash) && equalCases(this.cases[index], currentCase, length))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // exact comparison of a stored case with the first "length" symbols of another case
+    private static boolean equalCases(int[] storedCase, int[] currentCase, int length) {
+        if (storedCase.length != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (storedCase[i] != currentCase[i])
+                return false;
+        return true;
+    }
+
+    private void grow() {
+        int capacity = this.cases.length * 2;
+        this.cases = Arrays.copyOf(this.cases, capacity);
+        this.hashes = Arrays.copyOf(this.hashes, capacity);
+        this.multiplicities = Arrays.copyOf(this.multiplicities, capacity);
+    }
+
+    private void rehash(int tableSize) {
+        this.slots = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int index = 0; index < this.size; index++) {
+            int slot = mix(this.hashes[index]) & mask;
+            while (this.slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            this.slots[slot] = index + 1;
+        }
+    }
+
+    // spreads the high bits of the hash into the bits used for addressing
+    private static int mix(long hash) {
+        hash ^= (hash >>> 32);
+        hash ^= (hash >>> 16);
+        return (int) hash;
+    }
+
+    // smallest power of two that keeps the load factor below 0.5 for the given number of cases
+    private static int tableSizeFor(int cases) {
+        int tableSize = 1;
+        while (tableSize < 2 * cases)
+            tableSize <<= 1;
+        return tableSize;
+    }
+
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Models.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+// imports flat CSV event tables (one event per line with case id, activity, lifecycle type and timestamp)
+// events are grouped by case id and ordered by timestamp (ties keep the order of the file).
+// if more than "maxEventsInMemory" events are read, sorted runs are written to temporary files and merged afterwards,
+// so logs larger than the available memory can be imported. cases are delivered in order of their case ids
+public class CsvLogImporter {
+
+    // columns (0-based) of the event attributes. lifecycle and timestamp columns are optional (-1)
+    private int caseColumn;
+    private int activityColumn;
+    private int lifecycleColumn;
+    private int timestampColumn;
+    // field separator
+    private char separator = ',';
+    // indicates that the first line contains column names and is skipped
+    private boolean hasHeader = true;
+    // maximum number of events held in memory before a sorted run is written to disk
+    private int maxEventsInMemory = 1000000;
+    // lifecycle type used if there is no lifecycle column
+    private String defaultLifecycle = "complete";
+    private Charset charset = Charset.forName("UTF-8");
+
+
+    public CsvLogImporter(int caseColumn, int activityColumn, int lifecycleColumn, int timestampColumn) {
+        this.caseColumn = caseColumn;
+        this.activityColumn = activityColumn;
+        this.lifecycleColumn = lifecycleColumn;
+        this.timestampColumn = timestampColumn;
+    }
+
+    // imports the file into a new log (cases are appended directly, no textual copy of the log is created)
+    public NonRedundantLog importLog(File f, String name) throws IOException {
+        final NonRedundantLog log = new NonRedundantLog(name, new ArrayList<ArrayList<String>>());
+        this.importLog(f, new TraceConsumer() {
+            public void consumeTrace(ArrayList<String> trace) {
+                log.appendCase(trace);
+            }
+        });
+        return log;
+    }
+
+    // imports the file and passes each case to the consumer
+    public void importLog(File f, TraceConsumer consumer) throws IOException {
+        ArrayList<Event> buffer = new ArrayList<Event>();
+        ArrayList<File> runs = new ArrayList<File>();
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(f), this.charset));
+            try {
+                String line;
+                long sequence = 0;
+                if (this.hasHeader)
+                    reader.readLine();
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty())
+                        continue;
+                    buffer.add(this.parseEvent(line, sequence++));
+                    if (buffer.size() >= this.maxEventsInMemory) {
+                        runs.add(this.writeRun(buffer));
+                        buffer.clear();
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+
+            if (runs.size() == 0) {
+                // everything fits into memory
+                Collections.sort(buffer);
+                ArrayList<String> currentCase = new ArrayList<String>();
+                String currentCaseId = null;
+                for (Event e : buffer) {
+                    if ((currentCaseId != null) && (currentCaseId.equals(e.caseId) == false)) {
+                        consumer.consumeTrace(currentCase);
+                        currentCase = new ArrayList<String>();
+                    }
+                    currentCaseId = e.caseId;
+                    currentCase.add(e.event);
+                }
+                if (currentCaseId != null)
+                    consumer.consumeTrace(currentCase);
+            } else {
+                if (buffer.size() > 0)
+                    runs.add(this.writeRun(buffer));
+                buffer = null;
+                this.mergeRuns(runs, consumer);
+            }
+        } finally {
+            for (File run : runs)
+                run.delete();
+        }
+    }
+
+    // k-way merge of sorted runs. events of a case are consecutive in the merged stream
+    private void mergeRuns(ArrayList<File> runs, TraceConsumer consumer) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+        ArrayList<RunReader> readers = new ArrayList<RunReader>();
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance())
+                    queue.add(reader);
+            }
+
+            ArrayList<String> currentCase = new ArrayList<String>();
+            String currentCaseId = null;
+            while (queue.isEmpty() == false) {
+                RunReader reader = queue.poll();
+                Event e = reader.current;
+                if ((currentCaseId != null) && (currentCaseId.equals(e.caseId) == false)) {
+                    consumer.consumeTrace(currentCase);
+                    currentCase = new ArrayList<String>();
+                }
+                currentCaseId = e.caseId;
+                currentCase.add(e.event);
+                if (reader.advance())
+                    queue.add(reader);
+            }
+            if (currentCaseId != null)
+                consumer.consumeTrace(currentCase);
+        } finally {
+            for (RunReader reader : readers)
+                reader.close();
+        }
+    }
+
+    // sorts the buffer and writes it to a temporary file
+    private File writeRun(ArrayList<Event> buffer) throws IOException {
+        Collections.sort(buffer);
+        File run = File.createTempFile("csvlog", ".run");
+        run.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+        try {
+            for (Event e : buffer) {
+                out.writeUTF(e.caseId);
+                out.writeLong(e.timestamp);
+                out.writeLong(e.sequence);
+                out.writeUTF(e.event);
+            }
+        } finally {
+            out.close();
+        }
+        return run;
+    }
+
+    // creates an event from a line of the file
+    private Event parseEvent(String line, long sequence) {
+        ArrayList<String> fields = this.splitLine(line);
+        Event e = new Event();
+        e.caseId = this.getField(fields, this.caseColumn, line);
+        String lifecycle = (this.lifecycleColumn < 0) ? this.defaultLifecycle : this.getField(fields, this.lifecycleColumn, line);
+        e.event = this.getField(fields, this.activityColumn, line) + "(" + lifecycle + ")";
+        e.timestamp = (this.timestampColumn < 0) ? 0 : parseTimestamp(this.getField(fields, this.timestampColumn, line));
+        e.sequence = sequence;
+        return e;
+    }
+
+    private String getField(ArrayList<String> fields, int column, String line) {
+        if (column >= fields.size())
+            throw new IllegalArgumentException("Line has no column " + column + ": " + line);
+        return fields.get(column);
+    }
+
+    // splits a line into fields. fields may be enclosed in double quotes ("" is an escaped quote)
+    private ArrayList<String> splitLine(String line) {
+        ArrayList<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if ((i + 1 < line.length()) && (line.charAt(i + 1) == '"')) {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == this.separator) {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    // converts a timestamp to milliseconds. accepts numbers (milliseconds) and ISO-8601 date-times (with or without offset)
+    public static long parseTimestamp(String timestamp) {
+        try {
+            return Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            // not a number
+        }
+        try {
+            return OffsetDateTime.parse(timestamp).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // no offset
+        }
+        try {
+            return Instant.parse(timestamp).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // not an instant
+        }
+        try {
+            return LocalDateTime.parse(timestamp.replace(' ', 'T')).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Cannot parse timestamp \"" + timestamp + "\"!", e);
+        }
+    }
+
+    public char getSeparator() {
+        return separator;
+    }
+
+    public void setSeparator(char separator) {
+        this.separator = separator;
+    }
+
+    public boolean isHasHeader() {
+        return hasHeader;
+    }
+
+    public void setHasHeader(boolean hasHeader) {
+        this.hasHeader = hasHeader;
+    }
+
+    public int getMaxEventsInMemory() {
+        return maxEventsInMemory;
+    }
+
+    public void setMaxEventsInMemory(int maxEventsInMemory) {
+        this.maxEventsInMemory = Math.max(1, maxEventsInMemory);
+    }
+
+    public String getDefaultLifecycle() {
+        return defaultLifecycle;
+    }
+
+    public void setDefaultLifecycle(String defaultLifecycle) {
+        this.defaultLifecycle = defaultLifecycle;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    // an event, ordered by case id, timestamp and position in the file
+    private static class Event implements Comparable<Event> {
+        String caseId;
+        long timestamp;
+        long sequence;
+        String event;
+
+        public int compareTo(Event other) {
+            int result = this.caseId.compareTo(other.caseId);
+            if (result != 0)
+                return result;
+            if (this.timestamp != other.timestamp)
+                return (this.timestamp < other.timestamp) ? -1 : 1;
+            return (this.sequence < other.sequence) ? -1 : ((this.sequence == other.sequence) ? 0 : 1);
+        }
+    }
+
+    // reads the events of a sorted run one by one
+    private static class RunReader implements Comparable<RunReader> {
+        private DataInputStream in;
+        Event current;
+
+        RunReader(File run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+        }
+
+        // reads the next event. returns false if the run is exhausted
+        boolean advance() throws IOException {
+            Event e = new Event();
+            try {
+                e.caseId = this.in.readUTF();
+            } catch (EOFException ex) {
+                this.current = null;
+                return false;
+            }
+            e.timestamp = this.in.readLong();
+            e.sequence = this.in.readLong();
+            e.event = this.in.readUTF();
+            this.current = e;
+            return true;
+        }
+
+        void close() throws IOException {
+            this.in.close();
+        }
+
+        public int compareTo(RunReader other) {
+            return this.current.compareTo(other.current);
+        }
+    }
+
+}
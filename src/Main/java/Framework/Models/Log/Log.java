@@ -30,9 +30,13 @@
 
 package Framework.Models.Log;
 
+import java.io.IOException;
 import java.util.*;
 
-public class Log {
+import Framework.Utils.Renderable;
+import Framework.Utils.Utilities;
+
+public class Log implements Renderable {
     // the termination symbol included as the last observation in each log
     // indicates that a case has terminated
     // numerical value for termination symbol will always be the largest one
@@ -180,22 +184,27 @@ public class Log {
         }
     }
 
-    // delivers a string representing this log
+    // delivers a string representing this log (all cases, use render to bound the output)
     public String toString() {
-        String result = "";
+        return Utilities.render(this, -1);
+    }
 
-        result += "Log \"" + this.name + "\" with " + this.cases + " cases and " + this.numberOfUniqueSymbols + " unique symbols. Longest case: " + this.lengthOfLongestCase + " \n";
+    // writes this log case by case. at most "limit" cases are written (all if negative)
+    public void render(Appendable out, int limit) throws IOException {
+        out.append("Log \"").append(this.name).append("\" with ").append(Integer.toString(this.cases)).append(" cases and ");
+        out.append(Integer.toString(this.numberOfUniqueSymbols)).append(" unique symbols. Longest case: ").append(Integer.toString(this.lengthOfLongestCase)).append(" \n");
         for (int i = 0; i < cases; i++) {
-            result += "Case" + (i + 1) + " :";
+            if ((limit >= 0) && (i >= limit)) {
+                out.append("... ").append(Integer.toString(cases - i)).append(" more cases\n");
+                break;
+            }
+            out.append("Case").append(Integer.toString(i + 1)).append(" :");
             ArrayList<String> currentCaseText = this.originalLog.get(i);
             ArrayList<Integer> currentCaseInt = this.numericalLog.get(i);
-            for (int j = 0; j < currentCaseText.size(); j++) {
-                result += " " + currentCaseText.get(j) + "(" + currentCaseInt.get(j) + ")";
-            }
-            result += "\n";
+            for (int j = 0; j < currentCaseText.size(); j++)
+                out.append(' ').append(currentCaseText.get(j)).append('(').append(Integer.toString(currentCaseInt.get(j))).append(')');
+            out.append('\n');
         }
-
-        return result;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Models.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// builds a NonRedundantLog in a single pass over a textual log
+// the cases are partitioned into contiguous chunks which are processed by parallel workers.
+// each worker interns its symbols through a shared concurrent symbol table and deduplicates its cases into its own CaseTable.
+// the shards are merged in chunk order, so symbol numbers and the order of unique cases are the same as with a sequential pass
+public class LogBuilder {
+
+    // logs with fewer cases per available worker are built in the calling thread
+    private static final int MIN_CASES_PER_WORKER = 5000;
+
+
+    // builds a log using all available processors (if the log is large enough)
+    public static NonRedundantLog build(String name, ArrayList<ArrayList<String>> log, HashMap<String, Integer> sym2Num) {
+        return build(name, log, sym2Num, getDefaultNumberOfWorkers(log.size()));
+    }
+
+    // builds a log using the given number of workers
+    // if sym2Num is null, symbols are numbered in the order of their first appearance
+    public static NonRedundantLog build(String name, ArrayList<ArrayList<String>> log, HashMap<String, Integer> sym2Num, int numberOfWorkers) {
+        NonRedundantLog result = new NonRedundantLog(name);
+        build(result, log, sym2Num, numberOfWorkers);
+        return result;
+    }
+
+    // number of workers used by default for a log of the given size
+    public static int getDefaultNumberOfWorkers(int numberOfCases) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(processors, numberOfCases / MIN_CASES_PER_WORKER));
+    }
+
+    // fills the (empty) log "target" with the cases of the textual log
+    static void build(NonRedundantLog target, ArrayList<ArrayList<String>> log, HashMap<String, Integer> sym2Num, int numberOfWorkers) {
+        numberOfWorkers = Math.max(1, Math.min(numberOfWorkers, log.size()));
+
+        // symbol table shared by all workers. if no mapping is given, symbols receive provisional numbers
+        ConcurrentHashMap<String, Integer> symbolTable = new ConcurrentHashMap<String, Integer>();
+        if (sym2Num != null)
+            symbolTable.putAll(sym2Num);
+        AtomicInteger symbolCounter = new AtomicInteger(symbolTable.size());
+
+        // partition the log into contiguous chunks
+        Worker[] workers = new Worker[numberOfWorkers];
+        int chunkSize = (log.size() + numberOfWorkers - 1) / Math.max(1, numberOfWorkers);
+        for (int w = 0; w < numberOfWorkers; w++) {
+            int from = Math.min(log.size(), w * chunkSize);
+            int to = Math.min(log.size(), from + chunkSize);
+            workers[w] = new Worker(log, from, to, symbolTable, symbolCounter, sym2Num == null);
+        }
+
+        // process chunks
+        if (numberOfWorkers == 1) {
+            workers[0].run();
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(numberOfWorkers);
+            try {
+                ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+                for (Worker worker : workers)
+                    futures.add(executor.submit(worker));
+                for (Future<?> future : futures)
+                    future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("building log \"" + target.name + "\" was interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException("building log \"" + target.name + "\" failed", e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        // final numbers of the provisional symbol numbers
+        int numberOfProvisionalSymbols = symbolCounter.get();
+        int[] finalNumber = new int[numberOfProvisionalSymbols];
+        HashMap<String, Integer> symbol2number;
+        if (sym2Num != null) {
+            symbol2number = sym2Num;
+            for (int i = 0; i < numberOfProvisionalSymbols; i++)
+                finalNumber[i] = i;
+        } else {
+            // number symbols in the order of their first appearance (chunks are ordered, so are their symbols)
+            String[] provisionalSymbols = new String[numberOfProvisionalSymbols];
+            for (String s : symbolTable.keySet())
+                provisionalSymbols[symbolTable.get(s)] = s;
+            Arrays.fill(finalNumber, -1);
+            symbol2number = new HashMap<String, Integer>();
+            int numberOfUniqueSymbols = 0;
+            int terminationProvisionalNumber = -1;
+            for (Worker worker : workers) {
+                for (int i = 0; i < worker.numberOfNewSymbols; i++) {
+                    int provisionalNumber = worker.newSymbols[i];
+                    if (finalNumber[provisionalNumber] >= 0)
+                        continue;
+                    if (provisionalSymbols[provisionalNumber].equals(NonRedundantLog.TERMINATION_SYMBOL)) {
+                        terminationProvisionalNumber = provisionalNumber;
+                        continue;
+                    }
+                    finalNumber[provisionalNumber] = numberOfUniqueSymbols;
+                    symbol2number.put(provisionalSymbols[provisionalNumber], numberOfUniqueSymbols);
+                    numberOfUniqueSymbols++;
+                }
+            }
+            // termination symbol should get highest numerical value and is appended now
+            symbol2number.put(NonRedundantLog.TERMINATION_SYMBOL, numberOfUniqueSymbols);
+            if (terminationProvisionalNumber >= 0)
+                finalNumber[terminationProvisionalNumber] = numberOfUniqueSymbols;
+        }
+
+        // merge frequencies and shards (in chunk order to preserve the order of unique cases)
+        int[] frequencies = new int[symbol2number.size()];
+        CaseTable caseTable = new CaseTable();
+        int numberOfSymbols = 0;
+        int[] buffer = new int[16];
+        for (Worker worker : workers) {
+            for (int i = 0; i < worker.frequencies.length; i++)
+                if (worker.frequencies[i] > 0)
+                    frequencies[finalNumber[i]] += worker.frequencies[i];
+            numberOfSymbols += worker.numberOfSymbols;
+
+            for (int c = 0; c < worker.caseTable.size(); c++) {
+                int[] currentCase = worker.caseTable.getCase(c);
+                if (buffer.length < currentCase.length)
+                    buffer = new int[Math.max(currentCase.length, 2 * buffer.length)];
+                for (int i = 0; i < currentCase.length; i++)
+                    buffer[i] = finalNumber[currentCase[i]];
+                caseTable.add(buffer, currentCase.length, worker.caseTable.getMultiplicity(c));
+            }
+        }
+
+        target.initialize(log.size(), symbol2number, frequencies, caseTable, numberOfSymbols);
+    }
+
+    // processes a contiguous chunk of cases
+    private static class Worker implements Runnable {
+
+        private final ArrayList<ArrayList<String>> log;
+        private final int from;
+        private final int to;
+        private final ConcurrentHashMap<String, Integer> symbolTable;
+        private final AtomicInteger symbolCounter;
+        private final boolean addSymbols;
+
+        // local cache of the shared symbol table (avoids contention)
+        private final HashMap<String, Integer> localSymbols = new HashMap<String, Integer>();
+        // symbols in the order they were first seen in this chunk
+        int[] newSymbols = new int[16];
+        int numberOfNewSymbols = 0;
+        // unique cases of this chunk (w.r.t. provisional symbol numbers)
+        CaseTable caseTable = new CaseTable();
+        // frequencies of provisional symbol numbers
+        int[] frequencies = new int[16];
+        // total number of symbols in this chunk
+        int numberOfSymbols = 0;
+
+        Worker(ArrayList<ArrayList<String>> log, int from, int to, ConcurrentHashMap<String, Integer> symbolTable, AtomicInteger symbolCounter, boolean addSymbols) {
+            this.log = log;
+            this.from = from;
+            this.to = to;
+            this.symbolTable = symbolTable;
+            this.symbolCounter = symbolCounter;
+            this.addSymbols = addSymbols;
+        }
+
+        public void run() {
+            int[] currentCaseInt = new int[16];
+
+            for (int i = this.from; i < this.to; i++) {
+                ArrayList<String> currentCaseText = this.log.get(i);
+                if (currentCaseInt.length < currentCaseText.size())
+                    currentCaseInt = new int[Math.max(currentCaseText.size(), 2 * currentCaseInt.length)];
+
+                // construct numerical form and its hash
+                long hash = CaseTable.initialHash();
+                for (int j = 0; j < currentCaseText.size(); j++) {
+                    int numericalEntry = this.intern(currentCaseText.get(j));
+                    currentCaseInt[j] = numericalEntry;
+                    hash = CaseTable.extendHash(hash, numericalEntry);
+                    this.frequencies[numericalEntry]++;
+                }
+                this.numberOfSymbols += currentCaseText.size();
+
+                // adds the case or increases its multiplicity if it exists already
+                this.caseTable.add(currentCaseInt, currentCaseText.size(), hash, 1);
+            }
+        }
+
+        // returns the (provisional) number of a symbol
+        private int intern(String symbol) {
+            Integer number = this.localSymbols.get(symbol);
+            if (number == null) {
+                number = this.symbolTable.get(symbol);
+                if (number == null) {
+                    if (this.addSymbols == false)
+                        throw new IllegalArgumentException("Symbol \"" + symbol + "\" is not contained in the given symbol mapping!");
+                    Integer candidate = this.symbolCounter.getAndIncrement();
+                    number = this.symbolTable.putIfAbsent(symbol, candidate);
+                    if (number == null)
+                        number = candidate;
+                }
+                this.localSymbols.put(symbol, number);
+
+                // document first appearance in this chunk
+                if (this.numberOfNewSymbols == this.newSymbols.length)
+                    this.newSymbols = Arrays.copyOf(this.newSymbols, 2 * this.newSymbols.length);
+                this.newSymbols[this.numberOfNewSymbols++] = number;
+                if (this.frequencies.length <= number)
+                    this.frequencies = Arrays.copyOf(this.frequencies, Math.max(number + 1, 2 * this.frequencies.length));
+            }
+            return number;
+        }
+    }
+
+}
@@ -31,86 +31,34 @@
 package Framework.Models.Log;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 public class LogFilter {
 
 
     // removes all events from the log that are in the array list "eventsToFilter"
     public static ArrayList<ArrayList<String>> filterLog(ArrayList<ArrayList<String>> log, ArrayList<String> eventsToFilter) {
-
-        ArrayList<ArrayList<String>> filteredLog = new ArrayList<ArrayList<String>>();
-
-        for (ArrayList<String> currentCase : log) {
-            ArrayList<String> currentFilteredCase = new ArrayList<String>();
-            for (String event : currentCase) {
-                if (eventsToFilter.contains(event) == false)
-                    currentFilteredCase.add(event);
-            }
-            if (currentFilteredCase.size() > 0)
-                filteredLog.add(currentFilteredCase);
-        }
-
-        return filteredLog;
+        return new LogFilterPipeline().removeEvents(eventsToFilter).apply(log);
     }
 
     // assumes events are named "eventType(lifecycleType)"
     // creates a new event log which contains only events of lifecycleType=complete
     public static ArrayList<ArrayList<String>> filterOnlyComplete(ArrayList<ArrayList<String>> log) {
-        ArrayList<ArrayList<String>> filteredLog = new ArrayList<ArrayList<String>>();
-
-        for (ArrayList<String> currentCase : log) {
-            ArrayList<String> currentFilteredCase = new ArrayList<String>();
-            for (String event : currentCase) {
-                if (event.split("\\(")[1].toLowerCase().equals("complete)"))
-                    currentFilteredCase.add(event);
-            }
-            if (currentFilteredCase.size() > 0)
-                filteredLog.add(currentFilteredCase);
-        }
-
-        return filteredLog;
+        return new LogFilterPipeline().onlyComplete().apply(log);
     }
 
     // groups all events of a type occurring less often than specified by minRelativeFrequency into a single new event type, called "groupName"
     public static ArrayList<ArrayList<String>> groupInfrequentSymbols(ArrayList<ArrayList<String>> log, double minRelativeFrequency, String groupName) {
+        return new LogFilterPipeline().groupInfrequentSymbols(minRelativeFrequency, groupName).apply(log);
+    }
 
-        ArrayList<String> eventTypesToReplace = new ArrayList<String>();
-
-        // get frequencies of event types
-        HashMap<String, Integer> frequencies = new HashMap<String, Integer>();
-        int totalNumberOfEvents = 0;
-        for (ArrayList<String> currentCase : log) {
-            for (String event : currentCase) {
-                totalNumberOfEvents++;
-                if (frequencies.containsKey(event))
-                    frequencies.put(event, frequencies.get(event) + 1);
-                else
-                    frequencies.put(event, 1);
-            }
-        }
-
-        // find event types to replace
-        for (String eventType : frequencies.keySet()) {
-            int eventTypeFrequency = frequencies.get(eventType);
-            if ((((double) eventTypeFrequency) / ((double) totalNumberOfEvents)) < minRelativeFrequency)
-                eventTypesToReplace.add(eventType);
-        }
-
-        // construct new log
-        ArrayList<ArrayList<String>> filteredLog = new ArrayList<ArrayList<String>>();
-        for (ArrayList<String> currentCase : log) {
-            ArrayList<String> currentFilteredCase = new ArrayList<String>();
-            for (String event : currentCase) {
-                if (eventTypesToReplace.contains(event))
-                    currentFilteredCase.add(groupName);
-                else
-                    currentFilteredCase.add(event);
-            }
-            filteredLog.add(currentFilteredCase);
-        }
-
-        return filteredLog;
+    // returns all symbols of the log occurring less often than specified by minRelativeFrequency (uses the profile of the log)
+    public static ArrayList<String> getInfrequentSymbols(NonRedundantLog log, double minRelativeFrequency) {
+        LogProfile profile = log.getProfile();
+        ArrayList<String> result = new ArrayList<String>();
+        for (int s = 0; s < profile.getNumberOfSymbols(); s++)
+            if ((s != log.getTerminationNumber()) && (profile.getRelativeFrequency(s) < minRelativeFrequency))
+                result.add(log.getSymbolTable().getSymbol(s));
+        return result;
     }
 
 }
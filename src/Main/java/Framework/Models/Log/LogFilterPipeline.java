@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Models.Log;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+// a sequence of filters applied to a log in a single pass
+// events are interned to symbol numbers first. each filter is then evaluated once per symbol,
+// which yields a table mapping every input symbol to its output symbol (or to nothing if the event is removed).
+// the tables of all filters are combined, so the log is copied only once regardless of the number of filters
+public class LogFilterPipeline {
+
+    // filter types
+    private static final int REMOVE_EVENTS = 1;
+    private static final int ONLY_COMPLETE = 2;
+    private static final int GROUP_INFREQUENT = 3;
+
+    // filters in the order they are applied
+    private ArrayList<Filter> filters = new ArrayList<Filter>();
+
+
+    // removes all events contained in "eventsToFilter"
+    public LogFilterPipeline removeEvents(Collection<String> eventsToFilter) {
+        Filter filter = new Filter(REMOVE_EVENTS);
+        filter.eventsToFilter = new HashSet<String>(eventsToFilter);
+        this.filters.add(filter);
+        return this;
+    }
+
+    // removes all events not of lifecycleType=complete (events are named "eventType(lifecycleType)")
+    public LogFilterPipeline onlyComplete() {
+        this.filters.add(new Filter(ONLY_COMPLETE));
+        return this;
+    }
+
+    // groups all events of a type occurring less often than specified by minRelativeFrequency into a single new event type, called "groupName"
+    // frequencies refer to the log as produced by the preceding filters
+    public LogFilterPipeline groupInfrequentSymbols(double minRelativeFrequency, String groupName) {
+        Filter filter = new Filter(GROUP_INFREQUENT);
+        filter.minRelativeFrequency = minRelativeFrequency;
+        filter.groupName = groupName;
+        this.filters.add(filter);
+        return this;
+    }
+
+    // applies all filters to the log and returns the filtered log
+    // cases that become empty are removed if the pipeline removes events
+    public ArrayList<ArrayList<String>> apply(ArrayList<ArrayList<String>> log) {
+
+        // intern events and count symbols
+        HashMap<String, Integer> symbolNumbers = new HashMap<String, Integer>();
+        ArrayList<String> symbols = new ArrayList<String>();
+        int[] frequencies = new int[16];
+        int[][] numericalLog = new int[log.size()][];
+        for (int c = 0; c < log.size(); c++) {
+            ArrayList<String> currentCase = log.get(c);
+            int[] currentCaseInt = new int[currentCase.size()];
+            for (int i = 0; i < currentCase.size(); i++) {
+                String event = currentCase.get(i);
+                Integer number = symbolNumbers.get(event);
+                if (number == null) {
+                    number = symbols.size();
+                    symbolNumbers.put(event, number);
+                    symbols.add(event);
+                    if (frequencies.length <= number) {
+                        int[] tmp = new int[2 * frequencies.length];
+                        System.arraycopy(frequencies, 0, tmp, 0, frequencies.length);
+                        frequencies = tmp;
+                    }
+                }
+                currentCaseInt[i] = number;
+                frequencies[number]++;
+            }
+            numericalLog[c] = currentCaseInt;
+        }
+
+        // output event of each input symbol (null = removed)
+        int numberOfSymbols = symbols.size();
+        String[] output = new String[numberOfSymbols];
+        for (int s = 0; s < numberOfSymbols; s++)
+            output[s] = symbols.get(s);
+
+        boolean removesEvents = false;
+        for (Filter filter : this.filters) {
+            if (filter.type == REMOVE_EVENTS) {
+                removesEvents = true;
+                for (int s = 0; s < numberOfSymbols; s++)
+                    if ((output[s] != null) && filter.eventsToFilter.contains(output[s]))
+                        output[s] = null;
+            } else if (filter.type == ONLY_COMPLETE) {
+                removesEvents = true;
+                for (int s = 0; s < numberOfSymbols; s++)
+                    if ((output[s] != null) && (isComplete(output[s]) == false))
+                        output[s] = null;
+            } else if (filter.type == GROUP_INFREQUENT) {
+                // frequencies of the current output events
+                HashMap<String, Integer> outputFrequencies = new HashMap<String, Integer>();
+                int totalNumberOfEvents = 0;
+                for (int s = 0; s < numberOfSymbols; s++) {
+                    if (output[s] == null)
+                        continue;
+                    Integer frequency = outputFrequencies.get(output[s]);
+                    outputFrequencies.put(output[s], (frequency == null ? 0 : frequency) + frequencies[s]);
+                    totalNumberOfEvents += frequencies[s];
+                }
+
+                // replace infrequent events
+                for (int s = 0; s < numberOfSymbols; s++) {
+                    if (output[s] == null)
+                        continue;
+                    int eventTypeFrequency = outputFrequencies.get(output[s]);
+                    if ((((double) eventTypeFrequency) / ((double) totalNumberOfEvents)) < filter.minRelativeFrequency)
+                        output[s] = filter.groupName;
+                }
+            }
+        }
+
+        // removed symbols as a bitset for fast lookups
+        BitSet removed = new BitSet(numberOfSymbols);
+        for (int s = 0; s < numberOfSymbols; s++)
+            if (output[s] == null)
+                removed.set(s);
+
+        // construct new log in a single pass
+        ArrayList<ArrayList<String>> filteredLog = new ArrayList<ArrayList<String>>(log.size());
+        for (int c = 0; c < numericalLog.length; c++) {
+            int[] currentCase = numericalLog[c];
+            ArrayList<String> currentFilteredCase = new ArrayList<String>(currentCase.length);
+            for (int i = 0; i < currentCase.length; i++)
+                if (removed.get(currentCase[i]) == false)
+                    currentFilteredCase.add(output[currentCase[i]]);
+            if ((currentFilteredCase.size() > 0) || (removesEvents == false))
+                filteredLog.add(currentFilteredCase);
+        }
+
+        return filteredLog;
+    }
+
+    // checks if the lifecycle type of an event named "eventType(lifecycleType)" is complete
+    static boolean isComplete(String event) {
+        int start = event.indexOf('(');
+        if (start < 0)
+            throw new IllegalArgumentException("Event \"" + event + "\" has no lifecycle type!");
+        int end = event.indexOf('(', start + 1);
+        if (end < 0)
+            end = event.length();
+        return event.substring(start + 1, end).toLowerCase().equals("complete)");
+    }
+
+    // a filter and its arguments
+    private static class Filter {
+        int type;
+        HashSet<String> eventsToFilter;
+        double minRelativeFrequency;
+        String groupName;
+
+        Filter(int type) {
+            this.type = type;
+        }
+    }
+
+}
@@ -30,13 +30,20 @@
 
 package Framework.Models.Log;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.LineIterator;
@@ -49,49 +56,61 @@ import org.xml.sax.SAXException;
 public class LogParsers {
 
     public static ArrayList<ArrayList<String>> parseXes(File f) throws IOException {
+        final ArrayList<ArrayList<String>> result = new ArrayList<ArrayList<String>>();
+        parseXes(f, new TraceConsumer() {
+            public void consumeTrace(ArrayList<String> trace) {
+                result.add(trace);
+            }
+        });
+        return result;
+    }
 
-        ArrayList<ArrayList<String>> result = new ArrayList<ArrayList<String>>();
+    // parses a XES file and passes each trace to the consumer as soon as it is read
+    public static void parseXes(File f, TraceConsumer consumer) throws IOException {
 
         LineIterator iter = FileUtils.lineIterator(f);
 
         ArrayList<String> currentLine = new ArrayList<String>();
         String[] tmpEvent = new String[2];
 
-        int status = 0; // 0 = outside trace // 1 = inside trace // 2 = inside event
-        while (iter.hasNext()) {
-            String line = iter.nextLine();
-
-            if (line.trim().startsWith("</trace>")) {
-                // trace left
-                result.add(currentLine);
-                status = 0;
-            } else if (line.trim().startsWith("<trace>")) {
-                // new trace entered
-                status = 1;
-                currentLine = new ArrayList<String>();
-            } else if (line.trim().startsWith("<event>") && (status == 1)) {
-                // new event entered
-                tmpEvent = new String[2];
-                status = 2;
-            } else if ((line.trim().startsWith("<string key=\"concept:name\" value=\"")) && (status == 2)) {
-                // name of event found
-                String tmpString = line.trim().substring("<string key=\"concept:name\" value=\"".length());
-                tmpEvent[0] = tmpString.substring(0, tmpString.length() - 3);
-                //System.out.println(tmpString);
-            } else if ((line.trim().startsWith("<string key=\"lifecycle:transition\" value=\"")) && (status == 2)) {
-                // lifecycle type of event found
-                String tmpString = line.trim().substring("<string key=\"lifecycle:transition\" value=\"".length());
-                tmpEvent[1] = tmpString.substring(0, tmpString.length() - 3);
-                //System.out.println(tmpString);
-            } else if (line.trim().startsWith("</event>") && (status == 2)) {
-                // event left
-                currentLine.add(tmpEvent[0] + "(" + tmpEvent[1] + ")");
-                status = 1;
-            } else {
-                // do nothing
+        try {
+            int status = 0; // 0 = outside trace // 1 = inside trace // 2 = inside event
+            while (iter.hasNext()) {
+                String line = iter.nextLine();
+
+                if (line.trim().startsWith("</trace>")) {
+                    // trace left
+                    consumer.consumeTrace(currentLine);
+                    status = 0;
+                } else if (line.trim().startsWith("<trace>")) {
+                    // new trace entered
+                    status = 1;
+                    currentLine = new ArrayList<String>();
+                } else if (line.trim().startsWith("<event>") && (status == 1)) {
+                    // new event entered
+                    tmpEvent = new String[2];
+                    status = 2;
+                } else if ((line.trim().startsWith("<string key=\"concept:name\" value=\"")) && (status == 2)) {
+                    // name of event found
+                    String tmpString = line.trim().substring("<string key=\"concept:name\" value=\"".length());
+                    tmpEvent[0] = tmpString.substring(0, tmpString.length() - 3);
+                    //System.out.println(tmpString);
+                } else if ((line.trim().startsWith("<string key=\"lifecycle:transition\" value=\"")) && (status == 2)) {
+                    // lifecycle type of event found
+                    String tmpString = line.trim().substring("<string key=\"lifecycle:transition\" value=\"".length());
+                    tmpEvent[1] = tmpString.substring(0, tmpString.length() - 3);
+                    //System.out.println(tmpString);
+                } else if (line.trim().startsWith("</event>") && (status == 2)) {
+                    // event left
+                    currentLine.add(tmpEvent[0] + "(" + tmpEvent[1] + ")");
+                    status = 1;
+                } else {
+                    // do nothing
+                }
             }
+        } finally {
+            iter.close();
         }
-        return result;
     }
 
 
@@ -131,4 +150,49 @@ public class LogParsers {
 
         return result;
     }
+
+    // parses the first process of a MXML file and passes each process instance to the consumer as soon as it is read
+    // in contrast to parseMxml(File), the document is streamed and never held in memory
+    public static void parseMxml(File f, TraceConsumer consumer) throws IOException, XMLStreamException {
+        InputStream in = new BufferedInputStream(new FileInputStream(f));
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+        try {
+            ArrayList<String> currentInstance = null;
+            String eventType = null;
+            String eventLifeCycleType = null;
+            int processes = 0;
+            while (reader.hasNext()) {
+                int token = reader.next();
+                if (token == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if (element.equals("Process")) {
+                        processes++;
+                    } else if (processes == 1) {
+                        if (element.equals("ProcessInstance")) {
+                            currentInstance = new ArrayList<String>();
+                        } else if (element.equals("AuditTrailEntry")) {
+                            eventType = null;
+                            eventLifeCycleType = null;
+                        } else if (element.equals("WorkflowModelElement") && (eventType == null)) {
+                            eventType = reader.getElementText();
+                        } else if (element.equals("EventType") && (eventLifeCycleType == null)) {
+                            eventLifeCycleType = reader.getElementText();
+                        }
+                    }
+                } else if ((token == XMLStreamConstants.END_ELEMENT) && (processes == 1)) {
+                    String element = reader.getLocalName();
+                    if (element.equals("AuditTrailEntry") && (currentInstance != null)) {
+                        currentInstance.add(eventType + "(" + eventLifeCycleType + ")");
+                    } else if (element.equals("ProcessInstance")) {
+                        if ((currentInstance != null) && (currentInstance.size() > 0))
+                            consumer.consumeTrace(currentInstance);
+                        currentInstance = null;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+            in.close();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Models.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Framework.Utils.LongIntHashMap;
+
+// statistics of a log, computed in a single (parallel) pass over its unique cases weighted by their multiplicities:
+// symbol frequencies, trace length histogram, variant counts, directly-follows counts and start/end activity counts.
+// all statistics are primitive arrays indexed by the numerical values of the symbols, except for the directly-follows
+// counts, which are kept sparse (only observed pairs are stored) so that large alphabets do not need quadratic memory
+public class LogProfile {
+
+    // logs with fewer unique cases per available worker are profiled in the calling thread
+    private static final int MIN_CASES_PER_WORKER = 5000;
+
+    // number of symbols (including the termination symbol) and numerical value of the termination symbol
+    private int numberOfSymbols;
+    private int terminationNumber;
+    // how often each symbol appears in the log (the termination symbol is not counted)
+    private int[] symbolFrequencies;
+    // number of cases of each length (length = number of events, not counting the termination symbol)
+    private int[] lengthHistogram;
+    // number of cases of each variant (= multiplicities of the unique cases)
+    private int[] variantCounts;
+    // how often b directly follows a, keyed by LongIntHashMap.key(a, b) (the termination symbol follows the last event)
+    private LongIntHashMap directlyFollows;
+    // how often each symbol is the first symbol of a case (the termination symbol for empty cases)
+    private int[] startCounts;
+    // how often each symbol is the last event of a case (empty cases are not counted)
+    private int[] endCounts;
+    // total number of cases and events
+    private int numberOfCases;
+    private int numberOfEvents;
+
+
+    private LogProfile(int numberOfSymbols, int terminationNumber, int lengthOfLongestCase) {
+        this.numberOfSymbols = numberOfSymbols;
+        this.terminationNumber = terminationNumber;
+        this.symbolFrequencies = new int[numberOfSymbols];
+        this.lengthHistogram = new int[Math.max(1, lengthOfLongestCase)];
+        this.directlyFollows = new LongIntHashMap();
+        this.startCounts = new int[numberOfSymbols];
+        this.endCounts = new int[numberOfSymbols];
+    }
+
+    // profiles the log using all available processors (if the log is large enough)
+    public static LogProfile compute(NonRedundantLog log) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return compute(log, Math.max(1, Math.min(processors, log.getNumberOfUniqueCases() / MIN_CASES_PER_WORKER)));
+    }
+
+    // profiles the log using the given number of workers, each processing a contiguous range of unique cases
+    public static LogProfile compute(NonRedundantLog log, int numberOfWorkers) {
+        int numberOfUniqueCases = log.getNumberOfUniqueCases();
+        numberOfWorkers = Math.max(1, Math.min(numberOfWorkers, numberOfUniqueCases));
+
+        LogProfile[] partialProfiles = new LogProfile[numberOfWorkers];
+        Worker[] workers = new Worker[numberOfWorkers];
+        int chunkSize = (numberOfUniqueCases + numberOfWorkers - 1) / numberOfWorkers;
+        for (int w = 0; w < numberOfWorkers; w++) {
+            partialProfiles[w] = new LogProfile(log.getNumberOfUniqueSymbols(), log.getTerminationNumber(), log.getLengthOfLongestCase());
+            int from = Math.min(numberOfUniqueCases, w * chunkSize);
+            workers[w] = new Worker(log, partialProfiles[w], from, Math.min(numberOfUniqueCases, from + chunkSize));
+        }
+
+        if (numberOfWorkers == 1) {
+            workers[0].run();
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(numberOfWorkers);
+            try {
+                ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+                for (Worker worker : workers)
+                    futures.add(executor.submit(worker));
+                for (Future<?> future : futures)
+                    future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("profiling log \"" + log.name + "\" was interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException("profiling log \"" + log.name + "\" failed", e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        // merge partial profiles (variant counts are written directly by the workers)
+        LogProfile result = partialProfiles[0];
+        result.variantCounts = new int[numberOfUniqueCases];
+        for (Worker worker : workers)
+            System.arraycopy(worker.variantCounts, 0, result.variantCounts, worker.from, worker.to - worker.from);
+        for (int w = 1; w < numberOfWorkers; w++) {
+            LogProfile partialProfile = partialProfiles[w];
+            add(result.symbolFrequencies, partialProfile.symbolFrequencies);
+            add(result.lengthHistogram, partialProfile.lengthHistogram);
+            result.directlyFollows.addAll(partialProfile.directlyFollows);
+            add(result.startCounts, partialProfile.startCounts);
+            add(result.endCounts, partialProfile.endCounts);
+            result.numberOfCases += partialProfile.numberOfCases;
+            result.numberOfEvents += partialProfile.numberOfEvents;
+        }
+        return result;
+    }
+
+    public int getNumberOfSymbols() {
+        return this.numberOfSymbols;
+    }
+
+    public int getNumberOfCases() {
+        return this.numberOfCases;
+    }
+
+    public int getNumberOfEvents() {
+        return this.numberOfEvents;
+    }
+
+    public int getNumberOfVariants() {
+        return this.variantCounts.length;
+    }
+
+    // the arrays below are shared and must not be modified
+
+    public int[] getSymbolFrequencies() {
+        return this.symbolFrequencies;
+    }
+
+    public int[] getLengthHistogram() {
+        return this.lengthHistogram;
+    }
+
+    public int[] getVariantCounts() {
+        return this.variantCounts;
+    }
+
+    public int[] getStartCounts() {
+        return this.startCounts;
+    }
+
+    public int[] getEndCounts() {
+        return this.endCounts;
+    }
+
+    public int getSymbolFrequency(int symbol) {
+        return this.symbolFrequencies[symbol];
+    }
+
+    // frequency of a symbol relative to the number of events in the log
+    public double getRelativeFrequency(int symbol) {
+        if (this.numberOfEvents == 0)
+            return 0.0;
+        return ((double) this.symbolFrequencies[symbol]) / ((double) this.numberOfEvents);
+    }
+
+    // how often symbol b directly follows symbol a
+    public int getDirectlyFollowsCount(int a, int b) {
+        return this.directlyFollows.get(LongIntHashMap.key(a, b), 0);
+    }
+
+    // number of distinct pairs of directly following symbols
+    public int getNumberOfDirectlyFollowsPairs() {
+        return this.directlyFollows.size();
+    }
+
+    // distribution over the first symbol of a case
+    public double[] getStartDistribution() {
+        return normalize(this.startCounts, this.numberOfCases);
+    }
+
+    // distribution over the last event of a case (among non-empty cases)
+    public double[] getEndDistribution() {
+        return normalize(this.endCounts, this.numberOfCases - this.lengthHistogram[0]);
+    }
+
+    // distribution over the symbols following symbol a
+    public double[] getDirectlyFollowsDistribution(int a) {
+        int[] counts = new int[this.numberOfSymbols];
+        int total = 0;
+        for (int b = 0; b < this.numberOfSymbols; b++) {
+            counts[b] = this.getDirectlyFollowsCount(a, b);
+            total += counts[b];
+        }
+        return normalize(counts, total);
+    }
+
+    private static double[] normalize(int[] counts, int total) {
+        double[] result = new double[counts.length];
+        if (total > 0)
+            for (int i = 0; i < counts.length; i++)
+                result[i] = ((double) counts[i]) / ((double) total);
+        return result;
+    }
+
+    private static void add(int[] target, int[] source) {
+        for (int i = 0; i < target.length; i++)
+            target[i] += source[i];
+    }
+
+    // profiles a range of unique cases into a partial profile
+    private static class Worker implements Runnable {
+        private NonRedundantLog log;
+        private LogProfile profile;
+        private int from;
+        private int to;
+        private int[] variantCounts;
+
+        Worker(NonRedundantLog log, LogProfile profile, int from, int to) {
+            this.log = log;
+            this.profile = profile;
+            this.from = from;
+            this.to = to;
+            this.variantCounts = new int[to - from];
+        }
+
+        public void run() {
+            for (int c = this.from; c < this.to; c++) {
+                int multiplicity = this.log.getCaseMultiplicity(c);
+                int length = this.log.getLengthOfCase(c) - 1;
+                this.variantCounts[c - this.from] = multiplicity;
+                this.profile.numberOfCases += multiplicity;
+                this.profile.numberOfEvents += length * multiplicity;
+                this.profile.lengthHistogram[length] += multiplicity;
+
+                int previous = this.log.getNumericalLogEntry(c, 0);
+                this.profile.startCounts[previous] += multiplicity;
+                for (int i = 1; i <= length; i++) {
+                    int current = this.log.getNumericalLogEntry(c, i);
+                    this.profile.symbolFrequencies[previous] += multiplicity;
+                    this.profile.directlyFollows.add(LongIntHashMap.key(previous, current), multiplicity);
+                    previous = current;
+                }
+                if (length > 0)
+                    this.profile.endCounts[this.log.getNumericalLogEntry(c, length - 1)] += multiplicity;
+            }
+        }
+    }
+
+}
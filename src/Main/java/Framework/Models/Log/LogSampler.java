@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Models.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+// draws a sample of bounded size from a stream of traces (see TraceConsumer and LogParsers)
+// use reservoir(...) for a uniform sample of traces and stratified(...) for a sample stratified by trace variant
+public abstract class LogSampler implements TraceConsumer {
+
+    // name of the sampled log
+    protected String name;
+    // maximum number of cases in the sample
+    protected int sampleSize;
+    // source of randomness
+    protected Random random;
+    // number of traces seen so far
+    protected int tracesSeen = 0;
+
+
+    protected LogSampler(String name, int sampleSize, Random random) {
+        if (sampleSize < 1)
+            throw new IllegalArgumentException("Sample size must be positive!");
+        this.name = name;
+        this.sampleSize = sampleSize;
+        this.random = random;
+    }
+
+    // uniform sample of "sampleSize" traces (reservoir sampling, memory bounded by the sample size)
+    public static LogSampler reservoir(String name, int sampleSize, Random random) {
+        return new ReservoirSampler(name, sampleSize, random);
+    }
+
+    // sample of about "sampleSize" traces in which each variant (unique trace) is represented proportionally to its frequency
+    // as long as there are at most "sampleSize" variants, their counts are exact and every variant is kept at least once.
+    // with more variants, the frequent variants (those deserving at least one trace) are found by the SpaceSaving algorithm
+    // and represented proportionally, the remaining sample consists of the rare variants of a uniform reservoir
+    // memory is bounded by the sample size (at most "sampleSize" variant counters and "sampleSize" reservoir traces)
+    public static LogSampler stratified(String name, int sampleSize, Random random) {
+        return new VariantSampler(name, sampleSize, random);
+    }
+
+    // returns the sampled log
+    public abstract NonRedundantLog getLog();
+
+    public int getNumberOfTracesSeen() {
+        return this.tracesSeen;
+    }
+
+    // reduces the multiplicities of a log such that it contains about "maxCases" cases
+    // multiplicities are scaled by the same factor and rounded randomly, so relative frequencies are preserved in expectation
+    // if keepAllVariants is true, each unique case keeps a multiplicity of at least one and only the remaining cases are scaled,
+    // which requires that the log has at most "maxCases" unique cases
+    // the result is a view on the given log
+    public static NonRedundantLog downsample(NonRedundantLog log, int maxCases, boolean keepAllVariants, Random random) {
+        int[] multiplicities = log.getCaseMultiplicities();
+        scale(multiplicities, log.getNumberOfCases(), maxCases, keepAllVariants, random);
+        return log.createView(log.name, multiplicities);
+    }
+
+    // scales the given multiplicities (summing up to "cases") in place such that they sum up to about "maxCases"
+    private static void scale(int[] multiplicities, int cases, int maxCases, boolean keepAllVariants, Random random) {
+        if (cases <= maxCases)
+            return;
+        int variants = 0;
+        for (int c = 0; c < multiplicities.length; c++)
+            if (multiplicities[c] > 0)
+                variants++;
+        // with keepAllVariants, one case of each variant is kept and the others are shared proportionally
+        int reserved = 0;
+        if (keepAllVariants) {
+            if (variants > maxCases)
+                throw new IllegalArgumentException("Cannot keep all " + variants + " variants in a sample of " + maxCases + " cases!");
+            reserved = 1;
+        }
+        double factor = ((double) (maxCases - reserved * variants)) / ((double) (cases - reserved * variants));
+        for (int c = 0; c < multiplicities.length; c++) {
+            if (multiplicities[c] == 0)
+                continue;
+            double scaled = (multiplicities[c] - reserved) * factor;
+            int newMultiplicity = (int) Math.floor(scaled);
+            if (random.nextDouble() < scaled - newMultiplicity)
+                newMultiplicity++;
+            multiplicities[c] = reserved + newMultiplicity;
+        }
+    }
+
+    // keeps a uniform sample of the traces seen so far (Algorithm R)
+    private static class ReservoirSampler extends LogSampler {
+
+        private ArrayList<ArrayList<String>> reservoir = new ArrayList<ArrayList<String>>();
+
+        ReservoirSampler(String name, int sampleSize, Random random) {
+            super(name, sampleSize, random);
+        }
+
+        public void consumeTrace(ArrayList<String> trace) {
+            if (this.reservoir.size() < this.sampleSize) {
+                this.reservoir.add(trace);
+            } else {
+                // replace a random trace with probability sampleSize / (tracesSeen + 1)
+                int j = this.random.nextInt(this.tracesSeen + 1);
+                if (j < this.sampleSize)
+                    this.reservoir.set(j, trace);
+            }
+            this.tracesSeen++;
+        }
+
+        public NonRedundantLog getLog() {
+            return new NonRedundantLog(this.name, this.reservoir);
+        }
+    }
+
+    // counts variants with at most "sampleSize" counters (SpaceSaving, Metwally et al.) and keeps a uniform reservoir alongside.
+    // the counts are exact until a counter is reused for a new variant, afterwards they overestimate by at most "error"
+    private static class VariantSampler extends LogSampler {
+
+        // counters by variant and the same counters as a min-heap on their counts
+        private HashMap<ArrayList<String>, VariantCounter> counters = new HashMap<ArrayList<String>, VariantCounter>();
+        private VariantCounter[] heap;
+        // true once a counter has been reused for a new variant
+        private boolean evicted = false;
+        // uniform sample providing the rare variants
+        private ReservoirSampler uniform;
+
+        VariantSampler(String name, int sampleSize, Random random) {
+            super(name, sampleSize, random);
+            this.heap = new VariantCounter[sampleSize];
+            this.uniform = new ReservoirSampler(name, sampleSize, random);
+        }
+
+        public void consumeTrace(ArrayList<String> trace) {
+            this.uniform.consumeTrace(trace);
+            VariantCounter counter = this.counters.get(trace);
+            if (counter != null) {
+                counter.count++;
+                this.siftDown(counter.position);
+            } else if (this.counters.size() < this.sampleSize) {
+                counter = new VariantCounter(trace, this.counters.size());
+                counter.count = 1;
+                this.counters.put(trace, counter);
+                this.heap[counter.position] = counter;
+                this.siftUp(counter.position);
+            } else {
+                // reuse the counter with the smallest count, its count is an upper bound for the new variant
+                counter = this.heap[0];
+                this.counters.remove(counter.trace);
+                counter.trace = trace;
+                counter.error = counter.count;
+                counter.count++;
+                this.counters.put(trace, counter);
+                this.siftDown(0);
+                this.evicted = true;
+            }
+            this.tracesSeen++;
+        }
+
+        public NonRedundantLog getLog() {
+            int numberOfCounters = this.counters.size();
+            ArrayList<ArrayList<String>> sample = new ArrayList<ArrayList<String>>();
+            if (this.evicted == false) {
+                // exact counts of all variants
+                int[] multiplicities = new int[numberOfCounters];
+                for (int v = 0; v < numberOfCounters; v++)
+                    multiplicities[v] = this.heap[v].count;
+                scale(multiplicities, this.tracesSeen, this.sampleSize, true, this.random);
+                for (int v = 0; v < numberOfCounters; v++)
+                    for (int m = 0; m < multiplicities[v]; m++)
+                        sample.add(this.heap[v].trace);
+                return new NonRedundantLog(this.name, sample);
+            }
+
+            // frequent variants: guaranteed counts (count - error) worth at least one trace, scaled proportionally
+            double factor = ((double) this.sampleSize) / ((double) this.tracesSeen);
+            HashSet<ArrayList<String>> frequent = new HashSet<ArrayList<String>>();
+            for (int v = 0; v < numberOfCounters; v++) {
+                VariantCounter counter = this.heap[v];
+                double scaled = (counter.count - counter.error) * factor;
+                if (scaled < 1.0)
+                    continue;
+                int multiplicity = (int) Math.floor(scaled);
+                if (this.random.nextDouble() < scaled - multiplicity)
+                    multiplicity++;
+                frequent.add(counter.trace);
+                for (int m = 0; m < multiplicity; m++)
+                    sample.add(counter.trace);
+            }
+
+            // rare variants: the traces of the reservoir that are not frequent form a uniform sample of them
+            ArrayList<ArrayList<String>> rare = new ArrayList<ArrayList<String>>();
+            for (ArrayList<String> trace : this.uniform.reservoir)
+                if (frequent.contains(trace) == false)
+                    rare.add(trace);
+            int missing = Math.min(rare.size(), this.sampleSize - sample.size());
+            for (int i = 0; i < missing; i++) {
+                // partial Fisher-Yates shuffle
+                int j = i + this.random.nextInt(rare.size() - i);
+                ArrayList<String> trace = rare.get(j);
+                rare.set(j, rare.get(i));
+                sample.add(trace);
+            }
+            return new NonRedundantLog(this.name, sample);
+        }
+
+        private void siftUp(int position) {
+            VariantCounter counter = this.heap[position];
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+                if (this.heap[parent].count <= counter.count)
+                    break;
+                this.place(this.heap[parent], position);
+                position = parent;
+            }
+            this.place(counter, position);
+        }
+
+        private void siftDown(int position) {
+            VariantCounter counter = this.heap[position];
+            int size = this.counters.size();
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= size)
+                    break;
+                if ((child + 1 < size) && (this.heap[child + 1].count < this.heap[child].count))
+                    child++;
+                if (this.heap[child].count >= counter.count)
+                    break;
+                this.place(this.heap[child], position);
+                position = child;
+            }
+            this.place(counter, position);
+        }
+
+        private void place(VariantCounter counter, int position) {
+            this.heap[position] = counter;
+            counter.position = position;
+        }
+    }
+
+    // count of a variant and the amount by which it may overestimate the true count
+    private static class VariantCounter {
+        private ArrayList<String> trace;
+        private int count = 0;
+        private int error = 0;
+        private int position;
+
+        VariantCounter(ArrayList<String> trace, int position) {
+            this.trace = trace;
+            this.position = position;
+        }
+    }
+
+}
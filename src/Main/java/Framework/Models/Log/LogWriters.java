@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Models.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+// writes logs as MXML or XES documents event by event, so memory usage does not depend on the size of the log
+// if "multiplicityAsAttribute" is set, each unique case is written once with its multiplicity as an attribute,
+// otherwise it is repeated as often as it occurred (like the original toMxml)
+public class LogWriters {
+
+    public static void writeMxml(NonRedundantLog log, File f, boolean multiplicityAsAttribute) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(f), Charset.forName("UTF-8"));
+        try {
+            writeMxml(log, writer, multiplicityAsAttribute);
+        } finally {
+            writer.close();
+        }
+    }
+
+    // writes the log to the writer (which is flushed but not closed)
+    public static void writeMxml(NonRedundantLog log, Writer w, boolean multiplicityAsAttribute) throws IOException {
+        BufferedWriter out = new BufferedWriter(w, 1 << 16);
+        String[] names = new String[log.getNumberOfUniqueSymbols()];
+        String[] lifecycles = new String[names.length];
+        splitSymbols(log, names, lifecycles);
+
+        out.write("<WorkflowLog xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:noNamespaceSchemaLocation=\"http://is.tm.tue.nl/research/processmining/WorkflowLog.xsd\">\n");
+        out.write("<Process id=\"");
+        writeEscaped(out, log.name);
+        out.write("\">\n");
+        for (int i = 0; i < log.getNumberOfUniqueCases(); i++) {
+            int caseMultiplicity = log.getCaseMultiplicity(i);
+            int repetitions = multiplicityAsAttribute ? 1 : caseMultiplicity;
+            int length = log.getLengthOfCase(i);
+
+            for (int j = 0; j < repetitions; j++) {
+                out.write("<ProcessInstance id=\"");
+                out.write(Integer.toString(i));
+                out.write('(');
+                out.write(Integer.toString(j));
+                out.write(")\">\n");
+                if (multiplicityAsAttribute) {
+                    out.write("<Data>\n<Attribute name=\"multiplicity\">");
+                    out.write(Integer.toString(caseMultiplicity));
+                    out.write("</Attribute>\n</Data>\n");
+                }
+
+                for (int k = 0; k < length; k++) {
+                    int symbol = log.getNumericalLogEntry(i, k);
+                    if (names[symbol] != null) {
+                        out.write("<AuditTrailEntry>\n<WorkflowModelElement>");
+                        writeEscaped(out, names[symbol]);
+                        out.write("</WorkflowModelElement>\n<EventType>");
+                        writeEscaped(out, lifecycles[symbol]);
+                        out.write("</EventType>\n</AuditTrailEntry>\n");
+                    }
+                }
+                out.write("</ProcessInstance>\n");
+            }
+        }
+        out.write("</Process>\n");
+        out.write("</WorkflowLog>");
+        out.flush();
+    }
+
+    public static void writeXes(NonRedundantLog log, File f, boolean multiplicityAsAttribute) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(f), Charset.forName("UTF-8"));
+        try {
+            writeXes(log, writer, multiplicityAsAttribute);
+        } finally {
+            writer.close();
+        }
+    }
+
+    // writes the log to the writer (which is flushed but not closed)
+    // one element per line, so the file can be read again by LogParsers.parseXes
+    public static void writeXes(NonRedundantLog log, Writer w, boolean multiplicityAsAttribute) throws IOException {
+        BufferedWriter out = new BufferedWriter(w, 1 << 16);
+        String[] names = new String[log.getNumberOfUniqueSymbols()];
+        String[] lifecycles = new String[names.length];
+        splitSymbols(log, names, lifecycles);
+
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+        out.write("<log xes.version=\"1.0\" xes.features=\"nested-attributes\">\n");
+        out.write("<extension name=\"Concept\" prefix=\"concept\" uri=\"http://www.xes-standard.org/concept.xesext\"/>\n");
+        out.write("<extension name=\"Lifecycle\" prefix=\"lifecycle\" uri=\"http://www.xes-standard.org/lifecycle.xesext\"/>\n");
+        out.write("<string key=\"concept:name\" value=\"");
+        writeEscaped(out, log.name);
+        out.write("\"/>\n");
+        for (int i = 0; i < log.getNumberOfUniqueCases(); i++) {
+            int caseMultiplicity = log.getCaseMultiplicity(i);
+            int repetitions = multiplicityAsAttribute ? 1 : caseMultiplicity;
+            int length = log.getLengthOfCase(i);
+
+            for (int j = 0; j < repetitions; j++) {
+                out.write("<trace>\n<string key=\"concept:name\" value=\"");
+                out.write(Integer.toString(i));
+                out.write('(');
+                out.write(Integer.toString(j));
+                out.write(")\"/>\n");
+                if (multiplicityAsAttribute) {
+                    out.write("<int key=\"multiplicity\" value=\"");
+                    out.write(Integer.toString(caseMultiplicity));
+                    out.write("\"/>\n");
+                }
+
+                for (int k = 0; k < length; k++) {
+                    int symbol = log.getNumericalLogEntry(i, k);
+                    if (names[symbol] != null) {
+                        out.write("<event>\n<string key=\"concept:name\" value=\"");
+                        writeEscaped(out, names[symbol]);
+                        out.write("\"/>\n<string key=\"lifecycle:transition\" value=\"");
+                        writeEscaped(out, lifecycles[symbol]);
+                        out.write("\"/>\n</event>\n");
+                    }
+                }
+                out.write("</trace>\n");
+            }
+        }
+        out.write("</log>\n");
+        out.flush();
+    }
+
+    // splits each symbol "name(lifecycle)" once. the termination symbol gets no name and is not written
+    private static void splitSymbols(NonRedundantLog log, String[] names, String[] lifecycles) {
+        SymbolTable symbols = log.getSymbolTable();
+        for (int symbol = 0; symbol < names.length; symbol++) {
+            String event = symbols.getSymbol(symbol);
+            if (event.equals(NonRedundantLog.TERMINATION_SYMBOL))
+                continue;
+            int bracket = event.indexOf('(');
+            if ((bracket < 0) || (event.endsWith(")") == false)) {
+                names[symbol] = event;
+                lifecycles[symbol] = "complete";
+            } else {
+                names[symbol] = event.substring(0, bracket);
+                lifecycles[symbol] = event.substring(bracket + 1, event.length() - 1);
+            }
+        }
+    }
+
+    private static void writeEscaped(Writer out, String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '"':
+                    out.write("&quot;");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+
+}
@@ -30,9 +30,14 @@
 
 package Framework.Models.Log;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.*;
 
-public class NonRedundantLog {
+import Framework.Utils.Renderable;
+import Framework.Utils.Utilities;
+
+public class NonRedundantLog implements Renderable {
     // the termination symbol included as the last observation in each log
     // indicates that a case has terminated
     // numerical value for termination symbol will always be the largest one
@@ -53,16 +58,26 @@ public class NonRedundantLog {
     private int numberOfUniqueSymbols;
     // indicates the number of symbols in the longest case
     private int lengthOfLongestCase;
-    // an arraylist containing the unique cases in a processed, numerical form (easier to use in EM algorithm)
-    // each unique symbol is assinged a corresponding number
-    private ArrayList<ArrayList<Integer>> numericalLog = new ArrayList<ArrayList<Integer>>();
-    // an arraylist documenting the multiplicity of each unique case
-    private HashMap<ArrayList<Integer>, Integer> caseMultiplicity = new HashMap<ArrayList<Integer>, Integer>();
+    // the unique cases in a processed, numerical form (easier to use in EM algorithm) and their multiplicities
+    // each unique symbol is assinged a corresponding number. cases are stored without the termination symbol
+    private CaseTable caseTable;
+    // an arraylist containing the unique cases including the termination symbol (created on demand, discarded when the alphabet grows)
+    private ArrayList<ArrayList<Integer>> numericalLog = null;
+    // numerical value of the termination symbol
+    private int terminationNumber;
     // arraylists documenting the relations between original and numerical log
     private HashMap<String, Integer> symbol2number;
     private HashMap<Integer, String> number2symbol;
-    // hashmap storing for each symbol the frequency with which it appears in the log
-    private HashMap<String, Integer> symbolFrequency;
+    // the same relations as a symbol table
+    private SymbolTable symbolTable;
+    // true if the mappings and the symbol table may be referenced elsewhere (they are copied once before the alphabet grows)
+    private boolean symbolsShared = true;
+    // frequency with which each symbol appears in the log (indexed by numerical value, may have spare capacity)
+    private int[] symbolFrequencies;
+    // statistics of this log (computed on demand, discarded when the log changes)
+    private LogProfile profile = null;
+    // events of running cases that are not yet part of the log (see appendEvent)
+    private HashMap<String, ArrayList<String>> openCases = new HashMap<String, ArrayList<String>>();
 
 
     // creates a new log given observations
@@ -70,23 +85,55 @@ public class NonRedundantLog {
         this(name, log, null);
     }
 
+    // creates a new log given observations and a mapping of symbols to numbers (null to create a new mapping)
     public NonRedundantLog(String name, ArrayList<ArrayList<String>> log, HashMap<String, Integer> sym2Num) {
         this.name = name;
-        this.cases = log.size();
-        if (sym2Num == null) {
-            this.initializeNumberSymbolMappings(log);
-        } else {
-            // create reverse mapping
-            this.symbol2number = sym2Num;
-            this.number2symbol = new HashMap<Integer, String>();
-            for (String symbol : symbol2number.keySet()) {
-                number2symbol.put(symbol2number.get(symbol), symbol);
-            }
-            // set number of unique symbols
-            this.numberOfUniqueSymbols = symbol2number.size();
+        // create numerical log and count symbols
+        LogBuilder.build(this, log, sym2Num, LogBuilder.getDefaultNumberOfWorkers(log.size()));
+    }
+
+    // creates an empty log that is filled by the LogBuilder
+    NonRedundantLog(String name) {
+        this.name = name;
+    }
 
+    // sets the contents of this log (used by the LogBuilder)
+    void initialize(int cases, HashMap<String, Integer> sym2Num, int[] frequencies, CaseTable caseTable, int numberOfSymbols) {
+        // create reverse mapping
+        HashMap<Integer, String> num2Sym = new HashMap<Integer, String>();
+        for (String symbol : sym2Num.keySet()) {
+            num2Sym.put(sym2Num.get(symbol), symbol);
         }
-        this.initializeLog(log); // create numerical log and count symbols
+        this.initialize(cases, sym2Num, num2Sym, SymbolTable.fromMapping(num2Sym), frequencies, caseTable, numberOfSymbols);
+    }
+
+    // sets the contents of this log given both symbol mappings and the symbol table (which may be shared with other logs)
+    void initialize(int cases, HashMap<String, Integer> sym2Num, HashMap<Integer, String> num2Sym, SymbolTable symbols, int[] frequencies, CaseTable caseTable, int numberOfSymbols) {
+        this.cases = cases;
+        this.symbol2number = sym2Num;
+        this.number2symbol = num2Sym;
+        this.symbolTable = symbols;
+        this.symbolsShared = true;
+        // set number of unique symbols
+        this.numberOfUniqueSymbols = symbol2number.size();
+        this.terminationNumber = this.symbol2number.get(NonRedundantLog.TERMINATION_SYMBOL);
+
+        // frequencies of symbols
+        this.symbolFrequencies = Arrays.copyOf(frequencies, this.numberOfUniqueSymbols);
+
+        this.caseTable = caseTable;
+        this.numberOfUniqueCases = caseTable.size();
+        this.numericalLog = null;
+        this.profile = null;
+
+        // determine number of symbols in longest case
+        this.lengthOfLongestCase = 0;
+        for (int i = 0; i < this.numberOfUniqueCases; i++)
+            if (this.lengthOfLongestCase < this.getLengthOfCase(i))
+                this.lengthOfLongestCase = this.getLengthOfCase(i);
+
+        // total number of symbols
+        this.numberOfSymbols = numberOfSymbols;
     }
 
     public int getNumberOfCases() {
@@ -106,7 +153,7 @@ public class NonRedundantLog {
     }
 
     public int getLengthOfCase(int caseNumber) {
-        return this.numericalLog.get(caseNumber).size();
+        return this.caseTable.getCase(caseNumber).length + 1;
     }
 
     public int getLengthOfLongestCase() {
@@ -114,6 +161,12 @@ public class NonRedundantLog {
     }
 
     public ArrayList<ArrayList<Integer>> getNumericalLog() {
+        if (this.numericalLog == null) {
+            ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>(this.numberOfUniqueCases);
+            for (int c = 0; c < this.numberOfUniqueCases; c++)
+                result.add(this.toNumericalCase(this.caseTable.getCase(c)));
+            this.numericalLog = result;
+        }
         return this.numericalLog;
     }
 
@@ -122,12 +175,8 @@ public class NonRedundantLog {
 
         int caseNumber = 0;
         for (int n = 0; n < this.getNumberOfUniqueCases(); n++) {
-            ArrayList<Integer> curCase = this.getCase(n);
             for (int m = 0; m < this.getCaseMultiplicity(n); m++) {
-                result[caseNumber] = new int[curCase.size()];
-                for (int i = 0; i < curCase.size(); i++) {
-                    result[caseNumber][i] = curCase.get(i);
-                }
+                result[caseNumber] = this.getCaseAsArray(n);
                 caseNumber++;
             }
 
@@ -137,26 +186,124 @@ public class NonRedundantLog {
     }
 
     public ArrayList<Integer> getCase(int c) {
-        return this.numericalLog.get(c);
+        return this.getNumericalLog().get(c);
+    }
+
+    // returns a copy of a unique case including the termination symbol
+    public int[] getCaseAsArray(int c) {
+        int[] currentCase = this.caseTable.getCase(c);
+        int[] result = Arrays.copyOf(currentCase, currentCase.length + 1);
+        result[currentCase.length] = this.getTerminationNumber();
+        return result;
     }
 
     public int getNumericalLogEntry(int c, int i) {
-        return this.numericalLog.get(c).get(i);
+        int[] currentCase = this.caseTable.getCase(c);
+        if (i == currentCase.length)
+            return this.getTerminationNumber();
+        return currentCase[i];
     }
 
     public int getCaseMultiplicity(int c) {
-        ArrayList<Integer> currentCase = this.getCase(c);
-        return this.caseMultiplicity.get(currentCase);
+        return this.caseTable.getMultiplicity(c);
+    }
+
+    public int getTerminationNumber() {
+        return this.terminationNumber;
+    }
+
+    // returns a copy of the multiplicities of all unique cases
+    public int[] getCaseMultiplicities() {
+        int[] result = new int[this.numberOfUniqueCases];
+        for (int c = 0; c < this.numberOfUniqueCases; c++)
+            result[c] = this.caseTable.getMultiplicity(c);
+        return result;
+    }
+
+    // creates a log containing the unique cases of this log with new multiplicities (one for each unique case)
+    // cases with multiplicity 0 are left out. case data and symbol mappings are shared with this log, not copied
+    public NonRedundantLog createView(String name, int[] multiplicities) {
+        if (multiplicities.length != this.numberOfUniqueCases)
+            throw new IllegalArgumentException("Expected " + this.numberOfUniqueCases + " multiplicities but got " + multiplicities.length + "!");
+
+        CaseTable viewCaseTable = this.caseTable.createView(multiplicities);
+
+        // count symbols of the view
+        int[] frequencies = new int[this.numberOfUniqueSymbols];
+        int viewCases = 0;
+        int viewSymbols = 0;
+        for (int c = 0; c < viewCaseTable.size(); c++) {
+            int[] currentCase = viewCaseTable.getCase(c);
+            int multiplicity = viewCaseTable.getMultiplicity(c);
+            for (int i = 0; i < currentCase.length; i++)
+                frequencies[currentCase[i]] += multiplicity;
+            viewCases += multiplicity;
+            viewSymbols += currentCase.length * multiplicity;
+        }
+
+        NonRedundantLog result = new NonRedundantLog(name);
+        this.symbolsShared = true;
+        result.initialize(viewCases, this.symbol2number, this.number2symbol, this.symbolTable, frequencies, viewCaseTable, viewSymbols);
+        return result;
+    }
+
+    // splits this log into parts of (approximately) the given fractions, which must sum to one
+    // the multiplicity of each unique case is distributed over the parts by drawing from a multinomial distribution
+    // the parts are views on this log (see createView)
+    public NonRedundantLog[] split(double[] fractions, Random random) {
+        int[][] partMultiplicities = this.splitMultiplicities(fractions, random);
+
+        NonRedundantLog[] result = new NonRedundantLog[fractions.length];
+        for (int p = 0; p < fractions.length; p++)
+            result[p] = this.createView(this.name, partMultiplicities[p]);
+        return result;
+    }
+
+    // distributes the multiplicity of each unique case over parts of (approximately) the given fractions
+    // returns one multiplicity vector for each part (to be used with createView)
+    public int[][] splitMultiplicities(double[] fractions, Random random) {
+        int[][] partMultiplicities = new int[fractions.length][this.numberOfUniqueCases];
+        for (int c = 0; c < this.numberOfUniqueCases; c++) {
+            // multinomial draw by a sequence of binomial draws
+            int remainingCases = this.caseTable.getMultiplicity(c);
+            double remainingFraction = 1.0;
+            for (int p = 0; p < fractions.length; p++) {
+                int partCases;
+                if ((p == fractions.length - 1) || (remainingFraction <= fractions[p]))
+                    partCases = remainingCases;
+                else
+                    partCases = Utilities.sampleBinomial(remainingCases, fractions[p] / remainingFraction, random);
+                partMultiplicities[p][c] = partCases;
+                remainingCases -= partCases;
+                remainingFraction -= fractions[p];
+            }
+        }
+        return partMultiplicities;
     }
 
     public HashMap<Integer, String> getNumberToSymbolMapping() {
+        this.symbolsShared = true;
         return this.number2symbol;
     }
 
     public HashMap<String, Integer> getSymbolToNumberMapping() {
+        this.symbolsShared = true;
         return this.symbol2number;
     }
 
+    // returns the statistics of this log (computed once and cached until the log changes)
+    public synchronized LogProfile getProfile() {
+        if (this.profile == null)
+            this.profile = LogProfile.compute(this);
+        return this.profile;
+    }
+
+    // returns the symbol table of this log. use it instead of the hashmaps in time-critical code
+    public SymbolTable getSymbolTable() {
+        this.symbolsShared = true;
+        return this.symbolTable;
+    }
+
     public NonRedundantLog getValidationLog() {
         return this.validationLog;
     }
@@ -218,192 +365,185 @@ public class NonRedundantLog {
     // adds a symbol to this log
     // note that this symbol is not found in the log data! It is only included as a possible symbols that is never observed though!
     public void addSymbol(String symbol) {
-        if (this.symbol2number.get(symbol) != null) {
+        if (this.symbolTable.contains(symbol)) {
             // the symbol exists already
             return;
         }
-
-        // overwrite termination symbol
-        numberOfUniqueSymbols--;
-        this.symbol2number.put(symbol, numberOfUniqueSymbols);
-        this.number2symbol.put(numberOfUniqueSymbols, symbol);
-        this.symbolFrequency.put(symbol, 0);
-        numberOfUniqueSymbols++;
-
-        // termination symbol should get highest numerical value and is appended now
-        this.symbol2number.put(NonRedundantLog.TERMINATION_SYMBOL, this.numberOfUniqueSymbols);
-        this.number2symbol.put(this.numberOfUniqueSymbols, NonRedundantLog.TERMINATION_SYMBOL);
-        this.numberOfUniqueSymbols++;
+        this.growAlphabet(symbol);
     }
 
+    // appends a case to this log and returns the number of the unique case it belongs to
+    // new symbols are added to the alphabet (the termination symbol keeps the highest numerical value)
+    public int appendCase(ArrayList<String> trace) {
+        // make case numerical (growing the alphabet if needed)
+        int[] currentCaseInt = new int[trace.size()];
+        long hash = CaseTable.initialHash();
+        for (int i = 0; i < trace.size(); i++) {
+            String s = trace.get(i);
+            int number = this.symbolTable.getNumber(s);
+            if (number < 0)
+                number = this.growAlphabet(s);
+            currentCaseInt[i] = number;
+            hash = CaseTable.extendHash(hash, number);
+            this.symbolFrequencies[number]++;
+        }
 
-    // determines the number of unique symbols and maps symbols to numerical values
-    private void initializeNumberSymbolMappings(ArrayList<ArrayList<String>> log) {
-
-        // intialize counter. will be increased in the following
-        this.numberOfUniqueSymbols = 0;
-
-        // initialize hashmaps
-        this.symbol2number = new HashMap<String, Integer>();
-        this.number2symbol = new HashMap<Integer, String>();
-
-        // iterate cases to identify mapping
-        for (int i = 0; i < log.size(); i++) {
-            ArrayList<String> currentCase = log.get(i);
-            // iterate symbols of each case
-            for (int j = 0; j < currentCase.size(); j++) {
-                String s = currentCase.get(j);
-                if ((symbol2number.get(s) == null) && (s.equals(NonRedundantLog.TERMINATION_SYMBOL) == false)) {
-                    this.symbol2number.put(s, this.numberOfUniqueSymbols);
-                    this.number2symbol.put(this.numberOfUniqueSymbols, s);
-                    this.numberOfUniqueSymbols++;
-                }
-            }
+        // add case or increase its multiplicity
+        int caseNumber = this.caseTable.add(currentCaseInt, currentCaseInt.length, hash, 1);
+        if (caseNumber == this.numberOfUniqueCases) {
+            this.numberOfUniqueCases++;
+            if (this.numericalLog != null)
+                this.numericalLog.add(this.toNumericalCase(currentCaseInt));
         }
 
-        // termination symbol should get highest numerical value and is appended now
-        this.symbol2number.put(NonRedundantLog.TERMINATION_SYMBOL, this.numberOfUniqueSymbols);
-        this.number2symbol.put(this.numberOfUniqueSymbols, NonRedundantLog.TERMINATION_SYMBOL);
-        this.numberOfUniqueSymbols++;
-    }
+        // update statistics
+        this.profile = null;
+        this.cases++;
+        this.numberOfSymbols += trace.size();
+        if (this.lengthOfLongestCase < trace.size() + 1)
+            this.lengthOfLongestCase = trace.size() + 1;
 
-    // determines frequencies of symbols
-    private void initializeSymbolFrequencies(ArrayList<ArrayList<String>> log) {
-        this.symbolFrequency = new HashMap<String, Integer>();
+        return caseNumber;
+    }
 
-        for (String s : this.symbol2number.keySet())
-            this.symbolFrequency.put(s, new Integer(0));
+    // appends several cases to this log
+    public void appendCases(ArrayList<ArrayList<String>> traces) {
+        for (ArrayList<String> trace : traces)
+            this.appendCase(trace);
+    }
 
-        // iterate cases to identify mapping
-        for (int i = 0; i < log.size(); i++) {
-            ArrayList<String> currentCase = log.get(i);
-            // iterate symbols of each case
-            for (int j = 0; j < currentCase.size(); j++) {
-                String s = currentCase.get(j);
-                this.symbolFrequency.put(s, this.symbolFrequency.get(s) + 1);
-            }
+    // appends an event to a running case. the case is added to the log once it is closed
+    public void appendEvent(String caseId, String event) {
+        ArrayList<String> openCase = this.openCases.get(caseId);
+        if (openCase == null) {
+            openCase = new ArrayList<String>();
+            this.openCases.put(caseId, openCase);
         }
+        openCase.add(event);
     }
 
-    // creates a numerical version of the log
-    // duplicate cases are merged and weighted with their multiplicity
-    private void createNumericalLog(ArrayList<ArrayList<String>> log) {
-
-        this.numberOfUniqueCases = 0;
+    // closes a running case and appends it to this log
+    // returns the number of the unique case it belongs to, or -1 if no events were recorded for this case
+    public int closeCase(String caseId) {
+        ArrayList<String> openCase = this.openCases.remove(caseId);
+        if (openCase == null)
+            return -1;
+        return this.appendCase(openCase);
+    }
 
-        // temporary data structures to identify redundant cases
-        HashMap<String, ArrayList<Integer>> cases2logEntries = new HashMap<String, ArrayList<Integer>>();
-        String tmpCase;
+    public int getNumberOfOpenCases() {
+        return this.openCases.size();
+    }
 
-        for (int i = 0; i < log.size(); i++) {
+    // adds a new symbol right before the termination symbol and returns its number
+    // cases are stored without termination symbol, so the alphabet grows in amortized constant time
+    private int growAlphabet(String symbol) {
+        // the mappings may be shared with other logs or callers, so they are copied once before changing them
+        if (this.symbolsShared) {
+            this.symbol2number = new HashMap<String, Integer>(this.symbol2number);
+            this.number2symbol = new HashMap<Integer, String>(this.number2symbol);
+            this.symbolTable = this.symbolTable.copy();
+            this.symbolsShared = false;
+        }
 
-            // get current case in textual form and construct numerical form
-            ArrayList<String> currentCaseText = log.get(i);
-            ArrayList<Integer> currentCaseInt = new ArrayList<Integer>();
+        // overwrite termination symbol
+        int number = this.numberOfUniqueSymbols - 1;
+        this.symbol2number.put(symbol, number);
+        this.number2symbol.put(number, symbol);
+        this.symbolTable.insertBeforeLast(symbol);
+        if (this.numberOfUniqueSymbols == this.symbolFrequencies.length)
+            this.symbolFrequencies = Arrays.copyOf(this.symbolFrequencies, 2 * this.numberOfUniqueSymbols);
+        this.symbolFrequencies[this.numberOfUniqueSymbols] = this.symbolFrequencies[number];
+        this.symbolFrequencies[number] = 0;
 
-            // construct numerical form and "characteristic string" (tmpCase)
-            tmpCase = "";
-            for (int j = 0; j < currentCaseText.size(); j++) {
-                int numericalEntry = this.symbol2number.get(currentCaseText.get(j));
-                currentCaseInt.add(numericalEntry);
-                tmpCase += numericalEntry;
-            }
+        // termination symbol should get highest numerical value and is appended now
+        this.symbol2number.put(NonRedundantLog.TERMINATION_SYMBOL, this.numberOfUniqueSymbols);
+        this.number2symbol.put(this.numberOfUniqueSymbols, NonRedundantLog.TERMINATION_SYMBOL);
+        this.numberOfUniqueSymbols++;
+        this.profile = null;
 
-            ArrayList<Integer> currentCase = cases2logEntries.get(tmpCase);
-            // if current case did not exist yet, create it
-            if (currentCase == null) {
-                // append termination symbol
-                currentCaseInt.add(this.symbol2number.get(NonRedundantLog.TERMINATION_SYMBOL));
-                // add case to log
-                this.numericalLog.add(currentCaseInt);
-                this.caseMultiplicity.put(currentCaseInt, new Integer(1));
-                // put case to temporary hashmap to document that it exists
-                cases2logEntries.put(tmpCase, currentCaseInt);
-                // increase number of unique cases
-                this.numberOfUniqueCases++;
-            }
-            // if current case exists already, increase its multiplicity
-            else {
-                Integer multiplicity = this.caseMultiplicity.get(currentCase);
-                multiplicity++;
-                this.caseMultiplicity.put(currentCase, multiplicity);
-            }
-        }
-    }
+        // the termination symbol at the end of each case has a new number now
+        // cached numerical cases end with the old number and are rebuilt on demand
+        this.terminationNumber = this.numberOfUniqueSymbols - 1;
+        this.numericalLog = null;
 
-    // counts the number of unique symbols and assigns unique integers to them
-    private void initializeLog(ArrayList<ArrayList<String>> log) {
-        this.initializeSymbolFrequencies(log);
-        this.createNumericalLog(log);
+        // keep alphabets of attached logs aligned
+        if (this.validationLog != null)
+            this.validationLog.addSymbol(symbol);
+        if (this.testLog != null)
+            this.testLog.addSymbol(symbol);
 
-        // determine number of symbols in longest case
-        for (int i = 0; i < this.numericalLog.size(); i++)
-            if (this.lengthOfLongestCase < this.getLengthOfCase(i))
-                this.lengthOfLongestCase = this.getLengthOfCase(i);
+        return number;
+    }
 
-        // determine number of total symbols
-        this.numberOfSymbols = 0;
-        for (int i = 0; i < log.size(); i++)
-            this.numberOfSymbols += log.get(i).size();
+    // creates the numerical form of a case including the termination symbol
+    private ArrayList<Integer> toNumericalCase(int[] currentCase) {
+        ArrayList<Integer> currentCaseInt = new ArrayList<Integer>(currentCase.length + 1);
+        for (int i = 0; i < currentCase.length; i++)
+            currentCaseInt.add(currentCase[i]);
+        currentCaseInt.add(this.terminationNumber);
+        return currentCaseInt;
     }
 
+    // writes the log as MXML (see LogWriters for writing large logs without building a string)
     public String toMxml() {
-        StringBuffer result = new StringBuffer();
-        result.append("<WorkflowLog xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:noNamespaceSchemaLocation=\"http://is.tm.tue.nl/research/processmining/WorkflowLog.xsd\">\n");
-        result.append(String.format("<Process id=\"%s\">\n", this.name));
-        for (int i = 0; i < this.numberOfUniqueCases; i++) {
-            int caseMultiplicity = this.getCaseMultiplicity(i);
-            ArrayList<Integer> currentCase = this.numericalLog.get(i);
-
-            for (int j = 0; j < caseMultiplicity; j++) {
-                result.append(String.format("<ProcessInstance id=\"%s\">\n", i + "(" + j + ")"));
-
-                for (int k = 0; k < currentCase.size(); k++) {
-                    String[] event = this.number2symbol.get(currentCase.get(k)).split("\\(");
-                    if (event[0].equals(NonRedundantLog.TERMINATION_SYMBOL) == false) {
-                        String eventType = event[0];
-                        String eventLifecycleType = event[1].substring(0, event[1].length() - 1);
-                        result.append("<AuditTrailEntry>\n");
-                        result.append(String.format("<WorkflowModelElement>%s</WorkflowModelElement>\n", eventType));
-                        result.append(String.format("<EventType>%s</EventType>\n", eventLifecycleType));
-                        result.append("</AuditTrailEntry>\n");
-                    }
-                }
-                result.append("</ProcessInstance>\n");
-            }
+        StringWriter result = new StringWriter();
+        try {
+            LogWriters.writeMxml(this, result, false);
+        } catch (IOException e) {
+            // cannot happen when writing to a string
+            throw new IllegalStateException(e);
         }
-        result.append("</Process>\n");
-        result.append("</WorkflowLog>");
-
         return result.toString();
     }
 
-    // delivers a string representing this log
+    // delivers a string representing this log (all cases, use render to bound the output)
     public String toString() {
-        String result = "";
+        return Utilities.render(this, -1);
+    }
 
-        result += "Log \"" + this.name + "\" with " + this.cases + " cases (" + this.numberOfUniqueCases + " unique) and " + this.numberOfUniqueSymbols + " unique symbols. Longest case: " + this.lengthOfLongestCase + " \n";
+    // writes this log case by case. at most "limit" unique cases are written (all if negative)
+    public void render(Appendable out, int limit) throws IOException {
+        this.renderHeader(out);
         for (int i = 0; i < this.numberOfUniqueCases; i++) {
-            result += "Case" + (i + 1) + " :";
-            ArrayList<Integer> currentCase = this.numericalLog.get(i);
-            for (int j = 0; j < currentCase.size(); j++) {
-                result += " " + this.number2symbol.get(currentCase.get(j)) + "(" + currentCase.get(j) + ")";
+            if ((limit >= 0) && (i >= limit)) {
+                out.append("... ").append(Integer.toString(this.numberOfUniqueCases - i)).append(" more unique cases\n");
+                break;
+            }
+            out.append("Case").append(Integer.toString(i + 1)).append(" :");
+            int length = this.getLengthOfCase(i);
+            for (int j = 0; j < length; j++) {
+                int symbol = this.getNumericalLogEntry(i, j);
+                out.append(' ').append(this.symbolTable.getSymbol(symbol)).append('(').append(Integer.toString(symbol)).append(')');
             }
-            result += " Multiplicity: " + this.caseMultiplicity.get(currentCase);
-            result += "\n";
+            out.append(" Multiplicity: ").append(Integer.toString(this.getCaseMultiplicity(i)));
+            out.append('\n');
         }
-
-        return result;
     }
 
     public String toSummaryString() {
-        String result = "";
-        result += "Log \"" + this.name + "\" with " + this.cases + " cases (" + this.numberOfUniqueCases + " unique) and " + this.numberOfUniqueSymbols + " unique symbols. Longest case: " + this.lengthOfLongestCase + " \n";
-        result += "Symbol frequencies:\n";
-        for (String s : this.symbolFrequency.keySet()) {
-            result += s + ":" + this.symbolFrequency.get(s) + "\n";
+        StringBuilder result = new StringBuilder();
+        try {
+            this.renderSummary(result);
+        } catch (IOException e) {
+            // cannot happen when writing to a StringBuilder
+            throw new IllegalStateException(e);
         }
-        return result;
+        return result.toString();
+    }
+
+    // writes the size of this log and the frequency of each symbol
+    public void renderSummary(Appendable out) throws IOException {
+        this.renderHeader(out);
+        out.append("Symbol frequencies:\n");
+        for (int i = 0; i < this.numberOfUniqueSymbols; i++)
+            out.append(this.symbolTable.getSymbol(i)).append(':').append(Integer.toString(this.symbolFrequencies[i])).append('\n');
+    }
+
+    private void renderHeader(Appendable out) throws IOException {
+        out.append("Log \"").append(this.name).append("\" with ").append(Integer.toString(this.cases)).append(" cases (");
+        out.append(Integer.toString(this.numberOfUniqueCases)).append(" unique) and ").append(Integer.toString(this.numberOfUniqueSymbols));
+        out.append(" unique symbols. Longest case: ").append(Integer.toString(this.lengthOfLongestCase)).append(" \n");
     }
 
 }
\ No newline at end of file
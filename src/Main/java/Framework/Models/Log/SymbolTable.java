@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Models.Log;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// mapping between symbols and their numerical values 0..n-1
+// numbers are mapped to symbols by an array, symbols to numbers by an open-addressing hash table
+// only the owning log grows a table (see insertBeforeLast), and it copies the table first once it has been handed out
+public final class SymbolTable {
+
+    // symbol of each number (the array may have spare capacity beyond size)
+    private String[] symbols;
+    // number of symbols in the table
+    private int size;
+    // hash table holding (number + 1) of each symbol, 0 marks an empty slot
+    private int[] slots;
+
+
+    // creates a table assigning each symbol its position in the array
+    public SymbolTable(String[] symbols) {
+        this.symbols = Arrays.copyOf(symbols, symbols.length);
+        this.size = symbols.length;
+        int tableSize = 2;
+        while (tableSize < 2 * symbols.length)
+            tableSize <<= 1;
+        this.slots = new int[tableSize];
+
+        for (int number = 0; number < symbols.length; number++) {
+            if (symbols[number] == null)
+                throw new IllegalArgumentException("No symbol for number " + number + "!");
+            if (this.findSlot(symbols[number]) >= 0)
+                throw new IllegalArgumentException("Symbol \"" + symbols[number] + "\" appears twice!");
+            this.slots[this.freeSlot(symbols[number])] = number + 1;
+        }
+    }
+
+    // creates an independent copy of a table
+    private SymbolTable(SymbolTable table) {
+        this.symbols = Arrays.copyOf(table.symbols, table.symbols.length);
+        this.size = table.size;
+        this.slots = Arrays.copyOf(table.slots, table.slots.length);
+    }
+
+    // creates a table from a mapping of the numbers 0..n-1 to symbols
+    public static SymbolTable fromMapping(Map<Integer, String> number2symbol) {
+        String[] symbols = new String[number2symbol.size()];
+        for (int number = 0; number < symbols.length; number++)
+            symbols[number] = number2symbol.get(number);
+        return new SymbolTable(symbols);
+    }
+
+    // returns a copy that can be grown without affecting this table
+    SymbolTable copy() {
+        return new SymbolTable(this);
+    }
+
+    // adds a new symbol with the number of the last symbol, which moves to the new highest number
+    // (used by logs to keep the termination symbol last). amortized constant time
+    void insertBeforeLast(String symbol) {
+        if (this.size == 0)
+            throw new IllegalStateException("There is no last symbol!");
+        if (this.contains(symbol))
+            throw new IllegalArgumentException("Symbol \"" + symbol + "\" appears twice!");
+
+        // grow symbols and hash table by doubling
+        if (this.size == this.symbols.length)
+            this.symbols = Arrays.copyOf(this.symbols, 2 * this.size);
+        if (2 * (this.size + 1) > this.slots.length)
+            this.rehash(2 * this.slots.length);
+
+        String last = this.symbols[this.size - 1];
+        this.slots[this.findSlot(last)] = this.size + 1;
+        this.symbols[this.size] = last;
+        this.symbols[this.size - 1] = symbol;
+        this.slots[this.freeSlot(symbol)] = this.size;
+        this.size++;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public String getSymbol(int number) {
+        if (number >= this.size)
+            throw new ArrayIndexOutOfBoundsException(number);
+        return this.symbols[number];
+    }
+
+    // returns the number of a symbol, or -1 if the symbol is unknown
+    public int getNumber(String symbol) {
+        int slot = this.findSlot(symbol);
+        return (slot < 0) ? -1 : this.slots[slot] - 1;
+    }
+
+    public boolean contains(String symbol) {
+        return this.getNumber(symbol) >= 0;
+    }
+
+    // converts a sequence of symbols into numbers. throws an exception if a symbol is unknown
+    public int[] toNumbers(String[] sequence) {
+        int[] result = new int[sequence.length];
+        for (int i = 0; i < sequence.length; i++) {
+            result[i] = this.getNumber(sequence[i]);
+            if (result[i] < 0)
+                throw new IllegalArgumentException("Symbol \"" + sequence[i] + "\" not found in the original log!");
+        }
+        return result;
+    }
+
+    // returns the slot holding a symbol, or -1 if the symbol is unknown
+    private int findSlot(String symbol) {
+        int mask = this.slots.length - 1;
+        int slot = mix(symbol.hashCode()) & mask;
+        while (this.slots[slot] != 0) {
+            if (this.symbols[this.slots[slot] - 1].equals(symbol))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // returns the empty slot at which a symbol that is not in the table would be inserted
+    private int freeSlot(String symbol) {
+        int mask = this.slots.length - 1;
+        int slot = mix(symbol.hashCode()) & mask;
+        while (this.slots[slot] != 0)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    // moves all symbols into a hash table of the given size (a power of two)
+    private void rehash(int tableSize) {
+        this.slots = new int[tableSize];
+        for (int number = 0; number < this.size; number++)
+            this.slots[this.freeSlot(this.symbols[number])] = number + 1;
+    }
+
+    // spreads the high bits of the hash code into the bits used for addressing
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+}
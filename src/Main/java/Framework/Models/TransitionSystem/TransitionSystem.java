@@ -32,6 +32,7 @@ package Framework.Models.TransitionSystem;
 
 import Framework.Models.Graph.Graph;
 import Framework.Models.Graph.Node;
+import Framework.Models.Log.SymbolTable;
 import Framework.Models.PetriNet.PetriNet;
 import Framework.Utils.Utilities;
 import org.apache.commons.io.FileUtils;
@@ -62,6 +63,8 @@ public class TransitionSystem {
     // a TS should be able to represent its labels numerically
     public HashMap<String, String> symbol2number = new HashMap<String, String>();
     public HashMap<String, String> number2symbol = new HashMap<String, String>();
+    // the labels as a symbol table (label "tN" has number N)
+    public SymbolTable labels = new SymbolTable(new String[0]);
 
     // ------------------------ //
     // ----- constructors ----- //
@@ -387,8 +390,8 @@ public class TransitionSystem {
             // e.g., ".outputs t0 t1 t2 t3 t4"
             String tmp = ".outputs ";
 
-            for (String s : this.number2symbol.keySet())
-                tmp += s + " ";
+            for (int i = 0; i < this.labels.size(); i++)
+                tmp += "t" + i + " ";
             newContents.add(tmp.substring(0, tmp.length() - 1)); // removes last space
 
             // add a line indicating this is a state graph
@@ -399,7 +402,7 @@ public class TransitionSystem {
             // probabilities are not considered here!
             // e.g., "s0 t0 s1"
             for (Transition t : this.transitions)
-                newContents.add("s" + t.sourceState.name + " " + this.symbol2number.get(t.label) + " s" + t.targetState.name);
+                newContents.add("s" + t.sourceState.name + " " + "t" + this.labels.getNumber(t.label) + " s" + t.targetState.name);
 
             // add a line indicating the initial marking (if there is such a marking)
             // e.g., ".marking{s0}"
@@ -489,22 +492,22 @@ public class TransitionSystem {
     // initialize numerical representation of transition labels
     public void initializeNumericalLabels() {
 
-        int numberOfUniqueLabels = 0;
-
         // initialize hashmaps
         this.symbol2number = new HashMap<String, String>();
         this.number2symbol = new HashMap<String, String>();
+        ArrayList<String> uniqueLabels = new ArrayList<String>();
 
         // iterate transitions to identify mapping
         for (int i = 0; i < this.transitions.size(); i++) {
             Transition t = this.transitions.get(i);
             if (this.symbol2number.get(t.label) == null) {
                 // new symbol found
-                this.symbol2number.put(t.label, "t" + numberOfUniqueLabels);
-                this.number2symbol.put("t" + numberOfUniqueLabels, t.label);
-                numberOfUniqueLabels++;
+                this.symbol2number.put(t.label, "t" + uniqueLabels.size());
+                this.number2symbol.put("t" + uniqueLabels.size(), t.label);
+                uniqueLabels.add(t.label);
             }
         }
+        this.labels = new SymbolTable(uniqueLabels.toArray(new String[uniqueLabels.size()]));
     }
 
     // print TS into string
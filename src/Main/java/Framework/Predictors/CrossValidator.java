@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Predictors;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Framework.Algorithm.EmMapAlgorithm;
+import Framework.Algorithm.EmMapResult;
+import Framework.Algorithm.ParameterInitializer;
+import Framework.Models.Log.NonRedundantLog;
+
+// k-fold cross-validation of EM models over a grid of state numbers and prior strengths
+// folds are views on the log (multiplicity vectors over its unique cases), so symbol mappings and case data are shared by all fits
+public class CrossValidator {
+
+    // the log to be split into folds
+    private NonRedundantLog log;
+    // validation and training logs of each fold
+    private NonRedundantLog[] validationFolds;
+    private NonRedundantLog[] trainingFolds;
+    // number of threads used to fit models
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+    // computes starting values of the fits (random starting values if null)
+    private ParameterInitializer initializer = null;
+
+
+    // creates folds by distributing the multiplicity of each unique case randomly over the folds
+    public CrossValidator(NonRedundantLog log, int numberOfFolds, Random random) {
+        if (numberOfFolds < 2)
+            throw new IllegalArgumentException("Cross-validation requires at least two folds!");
+        this.log = log;
+
+        double[] fractions = new double[numberOfFolds];
+        for (int f = 0; f < numberOfFolds; f++)
+            fractions[f] = 1.0 / numberOfFolds;
+        int[][] foldMultiplicities = log.splitMultiplicities(fractions, random);
+
+        this.validationFolds = new NonRedundantLog[numberOfFolds];
+        this.trainingFolds = new NonRedundantLog[numberOfFolds];
+        for (int f = 0; f < numberOfFolds; f++) {
+            // training log contains everything but the validation fold
+            int[] trainingMultiplicities = log.getCaseMultiplicities();
+            for (int c = 0; c < trainingMultiplicities.length; c++)
+                trainingMultiplicities[c] -= foldMultiplicities[f][c];
+            this.validationFolds[f] = log.createView(log.name + "_val" + f, foldMultiplicities[f]);
+            this.trainingFolds[f] = log.createView(log.name + "_train" + f, trainingMultiplicities);
+        }
+    }
+
+    // returns the validation cross entropy for each grid cell ([prior index][state index]), averaged over the folds
+    // for each fold and cell the best of "numberOfTries" fits (w.r.t. training cross entropy) is evaluated
+    public double[][] crossValidate(final int[] gridStates, final double[] gridPrior, final int numberOfTries, final int maxIter, final double convergenceThreshold) throws Exception {
+        int numberOfFolds = this.getNumberOfFolds();
+        double[][] result = new double[gridPrior.length][gridStates.length];
+
+        // one task for each fold and grid cell
+        ArrayList<Future<Double>> futures = new ArrayList<Future<Double>>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.numberOfThreads));
+        try {
+            for (int i = 0; i < gridPrior.length; i++) {
+                for (int j = 0; j < gridStates.length; j++) {
+                    for (int f = 0; f < numberOfFolds; f++) {
+                        final NonRedundantLog trainingLog = this.trainingFolds[f];
+                        final NonRedundantLog validationLog = this.validationFolds[f];
+                        final int numberOfStates = gridStates[j];
+                        final double priorStrength = gridPrior[i];
+                        futures.add(executor.submit(new Callable<Double>() {
+                            public Double call() {
+                                EmMapResult best = fit(trainingLog, numberOfStates, priorStrength, numberOfTries, maxIter, convergenceThreshold, initializer);
+                                return best.getCrossEntropy(validationLog);
+                            }
+                        }));
+                    }
+                }
+            }
+
+            // average over folds (tasks were submitted in the same order)
+            int task = 0;
+            for (int i = 0; i < gridPrior.length; i++) {
+                for (int j = 0; j < gridStates.length; j++) {
+                    double sum = 0.0;
+                    for (int f = 0; f < numberOfFolds; f++)
+                        sum += futures.get(task++).get();
+                    result[i][j] = sum / numberOfFolds;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return result;
+    }
+
+    // fits a model several times and keeps the one with the lowest training cross entropy
+    public static EmMapResult fit(NonRedundantLog log, int numberOfStates, double priorStrength, int numberOfTries, int maxIter, double convergenceThreshold) {
+        return fit(log, numberOfStates, priorStrength, numberOfTries, maxIter, convergenceThreshold, null);
+    }
+
+    // same as above, starting each fit from the given initializer (random starting values if null)
+    public static EmMapResult fit(NonRedundantLog log, int numberOfStates, double priorStrength, int numberOfTries, int maxIter, double convergenceThreshold, ParameterInitializer initializer) {
+        EmMapResult best = null;
+        double bestCrossEntropy = Double.POSITIVE_INFINITY;
+        for (int numberOfTry = 1; numberOfTry <= numberOfTries; numberOfTry++) {
+            EmMapAlgorithm algo = new EmMapAlgorithm(log, numberOfStates, priorStrength);
+            algo.setMaximumIterations(maxIter);
+            algo.setConvergenceThreshold(convergenceThreshold);
+            algo.setInitializer(initializer);
+            EmMapResult tmp = algo.runAlgorithm();
+            double crossEntropy = tmp.getTrainCrossEntropy();
+            if ((best == null) || (crossEntropy < bestCrossEntropy)) {
+                best = tmp;
+                bestCrossEntropy = crossEntropy;
+            }
+        }
+        return best;
+    }
+
+    public int getNumberOfFolds() {
+        return this.validationFolds.length;
+    }
+
+    public NonRedundantLog getLog() {
+        return this.log;
+    }
+
+    public NonRedundantLog getTrainingFold(int fold) {
+        return this.trainingFolds[fold];
+    }
+
+    public NonRedundantLog getValidationFold(int fold) {
+        return this.validationFolds[fold];
+    }
+
+    public int getNumberOfThreads() {
+        return this.numberOfThreads;
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    public ParameterInitializer getInitializer() {
+        return this.initializer;
+    }
+
+    public void setInitializer(ParameterInitializer initializer) {
+        this.initializer = initializer;
+    }
+
+}
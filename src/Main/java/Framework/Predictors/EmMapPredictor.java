@@ -32,9 +32,12 @@ package Framework.Predictors;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Random;
 
 import Framework.Algorithm.EmMapAlgorithm;
 import Framework.Algorithm.EmMapResult;
+import Framework.Algorithm.ParameterInitializer;
+import Framework.Algorithm.PredictionSession;
 import Framework.Models.Log.NonRedundantLog;
 
 public class EmMapPredictor extends Predictor {
@@ -43,7 +46,16 @@ public class EmMapPredictor extends Predictor {
     public static final int AIC_SELECTOR = 2;
     public static final int BIC_SELECTOR = 3;
     public static final int TEST_SELECTOR = 4;
+    public static final int CV_SELECTOR = 5;
+    // number of histories propagated together in batch predictions
+    private static final int BATCH_BLOCK_SIZE = 1024;
     public EmMapResult predictor = null;
+    // number of folds used for model selection with CV_SELECTOR
+    public int numberOfFolds = 5;
+    // assigns cases to folds with CV_SELECTOR (use a seeded Random for reproducible model selection)
+    public Random random = new Random();
+    // computes starting values for the EM algorithm (random starting values if null)
+    public ParameterInitializer initializer = null;
 
     public EmMapPredictor(NonRedundantLog log, String name) {
         super(log, name);
@@ -126,6 +138,9 @@ public class EmMapPredictor extends Predictor {
 
     public EmMapResult createPredictor(int[] gridStates, double[] gridPrior, int numberOfTries, int maxIter, double convergenceThreshold, int selectionCriterion) throws Exception {
 
+        if (selectionCriterion == EmMapPredictor.CV_SELECTOR)
+            return this.createPredictorByCrossValidation(gridStates, gridPrior, numberOfTries, maxIter, convergenceThreshold);
+
         EmMapResult temporarySolution = null; // variable to store the (temporarily) best solution for the current parameter setting
 
         // iterate all values for prior and state number
@@ -140,6 +155,7 @@ public class EmMapPredictor extends Predictor {
                     EmMapAlgorithm algo = new EmMapAlgorithm(log, numberOfStates, priorStrength);
                     algo.setMaximumIterations(maxIter);
                     algo.setConvergenceThreshold(convergenceThreshold);
+                    algo.setInitializer(this.initializer);
                     EmMapResult tmp = algo.runAlgorithm();
 
                     // update best solution for this state number and prior value (if needed)
@@ -183,107 +199,162 @@ public class EmMapPredictor extends Predictor {
 
     }
 
-    // ------------------------------ //
-    // ----- prediction methods ----- //
-    // ------------------------------ //
+    // selects state number and prior strength with the lowest cross-validated cross entropy and fits the final model on the whole log
+    public EmMapResult createPredictorByCrossValidation(int[] gridStates, double[] gridPrior, int numberOfTries, int maxIter, double convergenceThreshold) throws Exception {
+        CrossValidator validator = new CrossValidator(log, this.numberOfFolds, this.random);
+        validator.setInitializer(this.initializer);
+        double[][] crossEntropies = validator.crossValidate(gridStates, gridPrior, numberOfTries, maxIter, convergenceThreshold);
 
-    // calculates probabilities for each symbol after seeing a history
-    public double[] predictProbability(String[] history) {
-
-        // the distribution over symbols (returned in the end)
-        double[] symbolDistribution = new double[predictor.numberOfSymbols];
-
-        // prior contains the initial state distribution
-        double[] stateDistribution = this.updateStateDistribution(predictor.prior, history);
-
-        // compute distribution over symbols given current state distribution
-        for (int i = 0; i < predictor.numberOfSymbols; i++) {
-            symbolDistribution[i] = 0;
-            for (int j = 0; j < predictor.numberOfStates; j++) {
-                symbolDistribution[i] += stateDistribution[j] * predictor.obsmat[j][i];
+        // find best grid cell
+        int bestPrior = 0;
+        int bestStates = 0;
+        for (int i = 0; i < gridPrior.length; i++) {
+            for (int j = 0; j < gridStates.length; j++) {
+                if (crossEntropies[i][j] < crossEntropies[bestPrior][bestStates]) {
+                    bestPrior = i;
+                    bestStates = j;
+                }
             }
         }
+        System.out.println("CV selected " + gridStates[bestStates] + " states and prior strength " + gridPrior[bestPrior] + " (CE: " + crossEntropies[bestPrior][bestStates] + ")");
 
-        return symbolDistribution;
+        this.predictor = CrossValidator.fit(log, gridStates[bestStates], gridPrior[bestPrior], numberOfTries, maxIter, convergenceThreshold, this.initializer);
+        return this.predictor;
     }
 
-    // calculates probabilities for a particular symbol after seeing a history, for each of the subsequent steps
-    public double[] getSymbolProbabilitiesBySteps(String[] history, int numberOfSteps, String symbol) {
+    // ------------------------------ //
+    // ----- prediction methods ----- //
+    // ------------------------------ //
 
-        if ((numberOfSteps < 1) || (symbol == null) || (predictor.log.getSymbolToNumberMapping().get(symbol) == null))
-            throw new IllegalArgumentException("problem with arguments while computing symbol probabilities");
+    // creates a session that tracks the state distribution of a running case event by event
+    public PredictionSession createSession() {
+        return this.predictor.createSession();
+    }
 
-        double[] symbolProbabilities = new double[numberOfSteps];
-        int numericalSymbol = predictor.log.getSymbolToNumberMapping().get(symbol);
+    // cursor backed by a prediction session, each event costs O(k^2)
+    @Override
+    public PredictionCursor createCursor() {
+        final PredictionSession session = this.createSession();
+        return new PredictionCursor() {
+            public void reset() {
+                session.reset();
+            }
 
-        double[] currentStateDistribution = this.updateStateDistribution(predictor.prior, history);
+            public void advance(String symbol) {
+                session.observe(symbol);
+            }
 
-        for (int i = 0; i < numberOfSteps; i++) {
-            // compute symbol probabilitiy
-            symbolProbabilities[i] = 0.0;
-            for (int j = 0; j < predictor.numberOfStates; j++) {
-                symbolProbabilities[i] += currentStateDistribution[j] * predictor.obsmat[j][numericalSymbol];
+            public double[] getDistributionOverNextSymbol() {
+                return session.getDistributionOverNextSymbol();
             }
+        };
+    }
 
-            // update state distribution
-            double[] oldStateDistribution = Arrays.copyOf(currentStateDistribution, currentStateDistribution.length);
-            for (int j = 0; j < predictor.numberOfStates; j++) {
-                currentStateDistribution[j] = 0.0;
-                for (int k = 0; k < predictor.numberOfStates; k++) {
-                    for (int l = 0; l < predictor.numberOfSymbols; l++) {
-                        currentStateDistribution[j] += oldStateDistribution[k] * predictor.obsmat[k][l] * predictor.transcube[k][l][j];
+    // propagates the state distributions of a block of histories in lockstep, one event at a time
+    // histories are ordered by decreasing length, so the ones still running always come first
+    // the arithmetic is the same as in PredictionSession, so results equal those of predictProbability
+    @Override
+    protected void predictRange(int[] packed, int[] offsets, int from, int to, double[][] result) {
+        int K = predictor.numberOfStates;
+        int M = predictor.numberOfSymbols;
+        double[] transitions = predictor.getFlatTranscube();
+        double[] current = new double[BATCH_BLOCK_SIZE * K];
+        double[] next = new double[BATCH_BLOCK_SIZE * K];
+
+        for (int blockStart = from; blockStart < to; blockStart += BATCH_BLOCK_SIZE) {
+            int B = Math.min(BATCH_BLOCK_SIZE, to - blockStart);
+
+            // order the histories of this block by decreasing length (counting sort)
+            int maxLength = 0;
+            for (int b = 0; b < B; b++)
+                maxLength = Math.max(maxLength, offsets[blockStart + b + 1] - offsets[blockStart + b]);
+            int[] lengthCounts = new int[maxLength + 2];
+            for (int b = 0; b < B; b++)
+                lengthCounts[maxLength - (offsets[blockStart + b + 1] - offsets[blockStart + b]) + 1]++;
+            for (int l = 1; l < lengthCounts.length; l++)
+                lengthCounts[l] += lengthCounts[l - 1];
+            int[] order = new int[B];
+            for (int b = 0; b < B; b++)
+                order[lengthCounts[maxLength - (offsets[blockStart + b + 1] - offsets[blockStart + b])]++] = blockStart + b;
+
+            for (int r = 0; r < B; r++)
+                System.arraycopy(predictor.prior, 0, current, r * K, K);
+
+            int active = B;
+            for (int t = 0; active > 0; t++) {
+                // histories ending here get their distribution over the next symbol
+                while ((active > 0) && (offsets[order[active - 1] + 1] - offsets[order[active - 1]] == t)) {
+                    active--;
+                    double[] symbolDistribution = new double[M];
+                    for (int k = 0; k < K; k++) {
+                        double weight = current[active * K + k];
+                        if (weight == 0.0)
+                            continue;
+                        double[] emissions = predictor.obsmat[k];
+                        for (int x = 0; x < M; x++)
+                            symbolDistribution[x] += weight * emissions[x];
                     }
+                    result[order[active]] = symbolDistribution;
                 }
+
+                // advance the others by their event at position t
+                for (int r = 0; r < active; r++) {
+                    int symbol = packed[offsets[order[r]] + t];
+                    int row = r * K;
+                    Arrays.fill(next, row, row + K, 0.0);
+                    for (int k = 0; k < K; k++) {
+                        double weight = current[row + k];
+                        if (weight == 0.0)
+                            continue;
+                        int matrixRow = (symbol * K + k) * K;
+                        for (int j = 0; j < K; j++)
+                            next[row + j] += weight * transitions[matrixRow + j];
+                    }
+                    // renormalize to avoid rounding errors
+                    double sum = 0.0;
+                    for (int j = 0; j < K; j++)
+                        sum += next[row + j];
+                    for (int j = 0; j < K; j++)
+                        next[row + j] = next[row + j] / sum;
+                }
+                double[] tmp = current;
+                current = next;
+                next = tmp;
             }
         }
-
-
-        return symbolProbabilities;
     }
 
-    private double[] updateStateDistribution(double[] currentStateDistribution, String[] history) {
-
-        // prior contains the initial state distribution
-        double[] stateDistribution = Arrays.copyOf(currentStateDistribution, currentStateDistribution.length);
+    // em models compute the cross entropy directly from their parameters
+    @Override
+    public double getCrossEntropy(NonRedundantLog log) {
+        return this.predictor.getCrossEntropy(log);
+    }
 
-        if ((history == null) || (history.length == 0)) {
-            // state distribution is up to date already as there is no history to update it with
-            return stateDistribution;
-        } else {
-            // convert history into numerical format
-            int[] numericalHistory = new int[history.length];
-            for (int i = 0; i < history.length; i++) {
+    // calculates probabilities for each symbol after seeing a history
+    public double[] predictProbability(String[] history) {
+        PredictionSession session = this.createSession();
+        session.observe(history);
+        return session.getDistributionOverNextSymbol();
+    }
 
-                if (predictor.log.getSymbolToNumberMapping().get(history[i]) == null) {
-                    throw new IllegalArgumentException("History contains an event not found of the original log!");
-                }
-                numericalHistory[i] = predictor.log.getSymbolToNumberMapping().get(history[i]);
-            }
+    // calculates probabilities for a particular symbol after seeing a history, for each of the subsequent steps
+    public double[] getSymbolProbabilitiesBySteps(String[] history, int numberOfSteps, String symbol) {
+        return this.predictor.getSymbolProbabilitiesBySteps(history, numberOfSteps, symbol);
+    }
 
-            // update state distribution up to end of history
-            for (int i = 0; i < numericalHistory.length; i++) {
-                // save current distribution temporarily
-                double[] oldStateDistribution = Arrays.copyOf(stateDistribution, stateDistribution.length);
-
-                // update the distribution
-                double tmpSum = 0.0;
-                for (int j = 0; j < predictor.numberOfStates; j++) {
-                    stateDistribution[j] = 0.0;
-                    for (int k = 0; k < predictor.numberOfStates; k++) {
-                        stateDistribution[j] += oldStateDistribution[k] * predictor.transcube[k][numericalHistory[i]][j];
-                    }
-                    tmpSum += stateDistribution[j];
-                }
-                // renormalize to avoid rounding errors
-                //System.out.println("tmpSum: " + tmpSum);
-                for (int j = 0; j < predictor.numberOfStates; j++) {
-                    stateDistribution[j] = (stateDistribution[j] / tmpSum);
-                }
-            }
-        }
+    // calculates the distribution over all symbols after seeing a history, for each of the subsequent steps
+    public double[][] getSymbolDistributionsBySteps(String[] history, int numberOfSteps) {
+        return this.predictor.getSymbolDistributionsBySteps(history, numberOfSteps);
+    }
 
-        return stateDistribution;
+    // expected number of events a case emits after seeing a history (not counting the termination symbol)
+    public double getExpectedRemainingLength(String[] history) {
+        return this.predictor.getExpectedRemainingLength(history);
+    }
 
+    // probabilities that a case ends after at most n more events, for n = 0 to maximumEvents, after seeing a history
+    public double[] getCompletionProbabilities(String[] history, int maximumEvents) {
+        return this.predictor.getCompletionProbabilities(history, maximumEvents);
     }
 
 }
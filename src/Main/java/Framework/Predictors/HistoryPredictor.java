@@ -30,12 +30,25 @@
 
 package Framework.Predictors;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import Framework.Models.Log.NonRedundantLog;
+import Framework.Utils.LongIntHashMap;
 
+// predicts the next symbol from the cases of the log that start with the history
+// the cases are indexed by a prefix trie built once, so a prediction is a walk of length |history|
 public class HistoryPredictor extends Predictor {
 
+    // trie nodes (node 0 is the root, i.e., the empty history). for each node: the symbol on the edge leading to it,
+    // the total multiplicity of the cases passing through it, and its children as a linked list
+    private int[] nodeSymbols;
+    private int[] nodeCounts;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int numberOfNodes;
+    // edges, the key combines parent node and symbol (see LongIntHashMap.key)
+    private LongIntHashMap edges;
+
     public HistoryPredictor(NonRedundantLog log, String name) {
         super(log, name);
         this.createPredictor(log);
@@ -43,40 +56,90 @@ public class HistoryPredictor extends Predictor {
 
     public void createPredictor(NonRedundantLog log) {
         this.log = log;
+
+        int expectedNodes = Math.max(16, log.getNumberOfUniqueCases() * 4);
+        this.nodeSymbols = new int[expectedNodes];
+        this.nodeCounts = new int[expectedNodes];
+        this.firstChild = new int[expectedNodes];
+        this.nextSibling = new int[expectedNodes];
+        this.edges = new LongIntHashMap(expectedNodes);
+        this.numberOfNodes = 0;
+        this.addNode(-1, -1);
+
+        // insert all unique cases, weighted by their multiplicity
+        for (int c = 0; c < log.getNumberOfUniqueCases(); c++) {
+            int caseMultiplicity = log.getCaseMultiplicity(c);
+            int node = 0;
+            this.nodeCounts[node] += caseMultiplicity;
+            for (int e = 0; e < log.getLengthOfCase(c); e++) {
+                int symbol = log.getNumericalLogEntry(c, e);
+                int child = this.edges.get(LongIntHashMap.key(node, symbol), -1);
+                if (child < 0) {
+                    child = this.addNode(node, symbol);
+                    this.edges.put(LongIntHashMap.key(node, symbol), child);
+                }
+                this.nodeCounts[child] += caseMultiplicity;
+                node = child;
+            }
+        }
     }
 
     // calculates probabilities for each symbol after seeing a history
     public double[] predictProbability(String[] history) {
 
         // make history numerical for easier processing
-        int[] numericalHistory = new int[history.length];
-        for (int i = 0; i < history.length; i++)
-            numericalHistory[i] = this.log.getSymbolToNumberMapping().get(history[i]);
+        int[] numericalHistory = this.log.getSymbolTable().toNumbers(history);
+
+        // walk down the trie along the history
+        int node = 0;
+        for (int i = 0; (i < numericalHistory.length) && (node >= 0); i++)
+            node = this.getChild(node, numericalHistory[i]);
+
+        return this.getDistribution(node);
+    }
+
+    // cursor that follows the history down the trie
+    @Override
+    public PredictionCursor createCursor() {
+        return new PredictionCursor() {
+            // current node, -1 if the history is not a prefix of any case
+            private int node = 0;
+
+            public void reset() {
+                this.node = 0;
+            }
+
+            public void advance(String symbol) {
+                int numericalSymbol = log.getSymbolTable().getNumber(symbol);
+                if (numericalSymbol < 0)
+                    throw new IllegalArgumentException("Symbol \"" + symbol + "\" not found in the original log!");
+                if (this.node >= 0)
+                    this.node = getChild(this.node, numericalSymbol);
+            }
+
+            public double[] getDistributionOverNextSymbol() {
+                return getDistribution(this.node);
+            }
+        };
+    }
+
+    // returns the child of a node along the symbol, -1 if there is none
+    private int getChild(int node, int symbol) {
+        return this.edges.get(LongIntHashMap.key(node, symbol), -1);
+    }
+
+    // distribution over the symbols following the history that leads to the node
+    // if no case continues the history, all symbols have equal probability
+    private double[] getDistribution(int node) {
 
         // the distribution over symbols (returned in the end)
         double[] symbolDistribution = new double[log.getNumberOfUniqueSymbols()];
 
         // counts how often each symbol appears after seeing the history
         int[] symbolCounter = new int[log.getNumberOfUniqueSymbols()];
-        for (int i = 0; i < log.getNumberOfUniqueSymbols(); i++)
-            symbolCounter[i] = 0;
-
-        // iterate cases in the log and record which symbols appear after seeing a history
-        for (int c = 0; c < this.log.getNumberOfUniqueCases(); c++) {
-            int caseMultiplicity = this.log.getCaseMultiplicity(c);
-            ArrayList<Integer> currentCase = this.log.getCase(c);
-            // use this case only if it is long enough to make a prediction
-            if (currentCase.size() > history.length) {
-                // check if this case starts with the history
-                boolean historyMatch = true;
-                for (int i = 0; i < history.length; i++)
-                    if (numericalHistory[i] != currentCase.get(i))
-                        historyMatch = false;
-                // if we found a match, record the next symbol
-                if (historyMatch)
-                    symbolCounter[currentCase.get(history.length)] += caseMultiplicity;
-            }
-        }
+        if (node >= 0)
+            for (int child = this.firstChild[node]; child >= 0; child = this.nextSibling[child])
+                symbolCounter[this.nodeSymbols[child]] += this.nodeCounts[child];
 
         // compute total matches
         int totalMatches = 0;
@@ -94,4 +157,24 @@ public class HistoryPredictor extends Predictor {
         return symbolDistribution;
     }
 
+    private int addNode(int parent, int symbol) {
+        if (this.numberOfNodes == this.nodeSymbols.length) {
+            int capacity = this.nodeSymbols.length * 2;
+            this.nodeSymbols = Arrays.copyOf(this.nodeSymbols, capacity);
+            this.nodeCounts = Arrays.copyOf(this.nodeCounts, capacity);
+            this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+            this.nextSibling = Arrays.copyOf(this.nextSibling, capacity);
+        }
+        int node = this.numberOfNodes++;
+        this.nodeSymbols[node] = symbol;
+        this.nodeCounts[node] = 0;
+        this.firstChild[node] = -1;
+        this.nextSibling[node] = -1;
+        if (parent >= 0) {
+            this.nextSibling[node] = this.firstChild[parent];
+            this.firstChild[parent] = node;
+        }
+        return node;
+    }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Predictors;
+
+import java.util.Arrays;
+
+import Framework.Models.Log.NonRedundantLog;
+import Framework.Utils.LongIntHashMap;
+
+// n-gram predictor with Witten-Bell interpolation: the distribution after a context h of length d is
+//   P(x | h) = (c(h, x) + T(h) * P(x | h')) / (c(h) + T(h))
+// where h' is h without its earliest symbol, c counts the symbols following h and T(h) is the number of distinct
+// symbols following h. the recursion ends with the distribution of all symbols (interpolated with the uniform
+// distribution). contexts that were never seen back off to the longest known suffix
+// all orders are read from the context trie of nGramPredictor in a single descent
+public class InterpolatedNGramPredictor extends nGramPredictor {
+
+    // lowest order: smoothed distribution of all symbols following any context
+    private double[] unigramDistribution = null;
+
+    public InterpolatedNGramPredictor(NonRedundantLog log, String name) {
+        super(log, name);
+    }
+
+    @Override
+    public void createPredictor(int n) {
+        super.createPredictor(n);
+        int symbolNum = log.getNumberOfUniqueSymbols();
+
+        // the counts of the lowest order are the sums over all contexts of length 1
+        int[] unigramCounts = new int[symbolNum];
+        for (int node = 0; node < this.numberOfNodes; node++)
+            if (this.depths[node] == 1)
+                for (int i = this.followerStart[node]; i < this.followerStart[node + 1]; i++)
+                    unigramCounts[this.followerSymbols[i]] += this.followerCounts[i];
+        this.unigramDistribution = smooth(unigramCounts);
+
+        // the first symbol of a case has no context, its distribution is smoothed as well
+        this.intitalDistribution = smooth(log.getProfile().getStartCounts());
+    }
+
+    @Override
+    public void predictProbability(int[] history, int length, double[] out) {
+        int symbolNum = log.getNumberOfUniqueSymbols();
+        if (length == 0) {
+            System.arraycopy(this.intitalDistribution, 0, out, 0, symbolNum);
+            return;
+        }
+
+        // start with the lowest order and interpolate with each longer context along the descent
+        System.arraycopy(this.unigramDistribution, 0, out, 0, symbolNum);
+        int node = 0;
+        for (int j = 1; (j <= n) && (j <= length); j++) {
+            int symbol = history[length - j];
+            if (symbol < 0)
+                break;
+            node = this.edges.get(LongIntHashMap.key(node, symbol), -1);
+            if (node < 0)
+                break;
+
+            double total = (double) this.totals[node];
+            double types = (double) (this.followerStart[node + 1] - this.followerStart[node]);
+            double lowerOrderWeight = types / (total + types);
+            for (int x = 0; x < symbolNum; x++)
+                out[x] *= lowerOrderWeight;
+            for (int i = this.followerStart[node]; i < this.followerStart[node + 1]; i++)
+                out[this.followerSymbols[i]] += ((double) this.followerCounts[i]) / (total + types);
+        }
+    }
+
+    // Witten-Bell interpolation of counts with the uniform distribution
+    private double[] smooth(int[] counts) {
+        double[] distribution = new double[counts.length];
+        double total = 0.0;
+        double types = 0.0;
+        for (int x = 0; x < counts.length; x++) {
+            total += counts[x];
+            if (counts[x] > 0)
+                types += 1;
+        }
+        if (total == 0.0) {
+            Arrays.fill(distribution, 1.0 / ((double) counts.length));
+            return distribution;
+        }
+        for (int x = 0; x < counts.length; x++)
+            distribution[x] = (counts[x] + (types / counts.length)) / (total + types);
+        return distribution;
+    }
+
+}
@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import Framework.Models.Log.NonRedundantLog;
+import Framework.Models.Log.SymbolTable;
 
 public class PredictionDataset {
 
@@ -44,15 +45,16 @@ public class PredictionDataset {
 
     // creates a dataset with the first n symbols of each case as features and the symbol n+1 as target variable
     public PredictionDataset(NonRedundantLog log, int n) {
+        SymbolTable symbols = log.getSymbolTable();
         for (int c = 0; c < log.getNumberOfUniqueCases(); c++) {
             ArrayList<Integer> currentCase = log.getCase(c);
             if (currentCase.size() > n) {
                 ArrayList<String> currentFeature = new ArrayList<String>();
                 for (int i = 0; i < n; i++) {
-                    currentFeature.add(log.getNumberToSymbolMapping().get(currentCase.get(i)));
+                    currentFeature.add(symbols.getSymbol(currentCase.get(i)));
                 }
                 features.add(currentFeature);
-                targets.add(log.getNumberToSymbolMapping().get(currentCase.get(n)));
+                targets.add(symbols.getSymbol(currentCase.get(n)));
                 weights.add(log.getCaseMultiplicity(c));
                 this.size += log.getCaseMultiplicity(c);
             }
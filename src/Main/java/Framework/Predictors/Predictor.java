@@ -31,12 +31,22 @@
 package Framework.Predictors;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import Framework.Models.Log.NonRedundantLog;
+import Framework.Models.Log.SymbolTable;
+import Framework.Utils.Utilities;
 
 public abstract class Predictor {
 
+    // batches with fewer histories per available worker are predicted in the calling thread
+    private static final int MIN_HISTORIES_PER_WORKER = 1000;
+
     public NonRedundantLog log;
     public String name = "noName";
 
@@ -47,11 +57,130 @@ public abstract class Predictor {
 
     public abstract double[] predictProbability(String[] history);
 
+    // number of most recent events that predictProbability depends on, -1 if it may depend on the whole history
+    public int getMaximumContextLength() {
+        return -1;
+    }
+
+    // creates a cursor to walk through cases event by event
+    // by default, the history (bounded by the maximum context length) is recorded and each prediction replays it with
+    // predictProbability
+    public PredictionCursor createCursor() {
+        final int maximumContextLength = this.getMaximumContextLength();
+        return new PredictionCursor() {
+            private ArrayList<String> history = new ArrayList<String>();
+
+            public void reset() {
+                this.history.clear();
+            }
+
+            public void advance(String symbol) {
+                if (maximumContextLength < 0) {
+                    this.history.add(symbol);
+                } else if (maximumContextLength > 0) {
+                    if (this.history.size() == maximumContextLength)
+                        this.history.remove(0);
+                    this.history.add(symbol);
+                }
+            }
+
+            public double[] getDistributionOverNextSymbol() {
+                return predictProbability(this.history.toArray(new String[this.history.size()]));
+            }
+        };
+    }
+
+    // predicts the next symbol for many histories at once (symbol numbers of this predictor's log)
+    // returns one distribution per history, i.e., the rows of a dense matrix
+    public double[][] predictProbabilities(int[][] histories) {
+        int[] offsets = new int[histories.length + 1];
+        for (int i = 0; i < histories.length; i++)
+            offsets[i + 1] = offsets[i] + histories[i].length;
+        int[] packed = new int[offsets[histories.length]];
+        for (int i = 0; i < histories.length; i++)
+            System.arraycopy(histories[i], 0, packed, offsets[i], histories[i].length);
+        return this.predictProbabilities(packed, offsets);
+    }
+
+    // same as above for histories packed into one array: history i consists of packed[offsets[i]] to
+    // packed[offsets[i + 1] - 1]. uses all available processors (if there are enough histories)
+    public double[][] predictProbabilities(int[] packed, int[] offsets) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int numberOfHistories = Math.max(0, offsets.length - 1);
+        return this.predictProbabilities(packed, offsets, Math.max(1, Math.min(processors, numberOfHistories / MIN_HISTORIES_PER_WORKER)));
+    }
+
+    // same as above using the given number of workers, each predicting a contiguous range of histories
+    public double[][] predictProbabilities(final int[] packed, final int[] offsets, int numberOfWorkers) {
+        if (offsets.length == 0)
+            throw new IllegalArgumentException("offsets must contain at least one entry");
+        final int numberOfHistories = offsets.length - 1;
+        int numberOfSymbols = this.log.getNumberOfUniqueSymbols();
+        for (int i = 0; i < numberOfHistories; i++)
+            if ((offsets[i] < 0) || (offsets[i] > offsets[i + 1]) || (offsets[i + 1] > packed.length))
+                throw new IllegalArgumentException("invalid offsets for history " + i);
+        for (int i = offsets[0]; i < offsets[numberOfHistories]; i++)
+            if ((packed[i] < 0) || (packed[i] >= numberOfSymbols))
+                throw new IllegalArgumentException("No symbol for number " + packed[i] + "!");
+
+        final double[][] result = new double[numberOfHistories][];
+        numberOfWorkers = Math.max(1, Math.min(numberOfWorkers, numberOfHistories));
+        int chunkSize = (numberOfHistories + numberOfWorkers - 1) / numberOfWorkers;
+        if (numberOfWorkers == 1) {
+            this.predictRange(packed, offsets, 0, numberOfHistories, result);
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(numberOfWorkers);
+            try {
+                ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+                for (int w = 0; w < numberOfWorkers; w++) {
+                    final int from = Math.min(numberOfHistories, w * chunkSize);
+                    final int to = Math.min(numberOfHistories, from + chunkSize);
+                    futures.add(executor.submit(new Runnable() {
+                        public void run() {
+                            predictRange(packed, offsets, from, to, result);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures)
+                    future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("batch prediction of \"" + this.name + "\" was interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException("batch prediction of \"" + this.name + "\" failed", e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+        return result;
+    }
+
+    // predicts the histories from to to-1 (see predictProbabilities) into the corresponding rows of result
+    // the default walks each history with a cursor. may be called concurrently for disjoint ranges
+    protected void predictRange(int[] packed, int[] offsets, int from, int to, double[][] result) {
+        SymbolTable symbols = this.log.getSymbolTable();
+        PredictionCursor cursor = this.createCursor();
+        for (int i = from; i < to; i++) {
+            cursor.reset();
+            for (int e = offsets[i]; e < offsets[i + 1]; e++)
+                cursor.advance(symbols.getSymbol(packed[e]));
+            double[] distribution = cursor.getDistributionOverNextSymbol();
+            result[i] = Arrays.copyOf(distribution, distribution.length);
+        }
+    }
+
     public String predict(String[] history) {
         // the distribution over symbols (returned in the end)
         double[] symbolDistribution = this.predictProbability(history);
 
-        // find symbol with highest probability
+        // return the symbol with highest probability
+        return this.log.getSymbolTable().getSymbol(indexOfMaximum(symbolDistribution));
+    }
+
+    // index of the highest probability (the first one in case of ties)
+    public static int indexOfMaximum(double[] symbolDistribution) {
         int maxIndex = -1;
         for (int i = 0; i < symbolDistribution.length; i++) {
             if (maxIndex < 0)
@@ -59,9 +188,7 @@ public abstract class Predictor {
             if (symbolDistribution[i] > symbolDistribution[maxIndex])
                 maxIndex = i;
         }
-
-        // return the symbol
-        return this.log.getNumberToSymbolMapping().get(maxIndex);
+        return maxIndex;
     }
 
     public double scoreAccuracy(PredictionDataset data) {
@@ -158,50 +285,35 @@ public abstract class Predictor {
         return specitivityBySymbol;
     }
 
+    // calculates the cross entropy of the cases in the log (in bits per case)
+    // each case is walked once with a cursor and its probability is accumulated in log space
     public double getCrossEntropy(NonRedundantLog log) {
-
-        // use dedicated method for em predictors (more efficient)
-        if (this instanceof Framework.Predictors.EmMapPredictor) {
-            EmMapPredictor emPred = (EmMapPredictor) this;
-            return emPred.predictor.getCrossEntropy(log);
-        }
-        //return -1;
-
-
-        // use this as default for other models
         double crossEntropy = 0.0;
         int numberOfCases = log.getNumberOfCases();
+        SymbolTable symbols = log.getSymbolTable();
+        PredictionCursor cursor = this.createCursor();
 
         for (int c = 0; c < log.getNumberOfUniqueCases(); c++) {
 
             // determine number of symbols in this case
-            int N = log.getNumericalLog().get(c).size();
+            int N = log.getLengthOfCase(c);
 
             // determine multiplicity of this case
             double caseMultiplicity = (double) log.getCaseMultiplicity(c);
 
-            // calculate case probability
-            double CaseProbability = 1.0;
-
-            // get string version of this case
-            ArrayList<String> currentCaseSymbolic = new ArrayList<String>();
+            // calculate logarithm of the case probability
+            double logCaseProbability = 0.0;
+            cursor.reset();
             for (int s = 0; s < N; s++) {
-                currentCaseSymbolic.add(log.getNumberToSymbolMapping().get(log.getNumericalLogEntry(c, s)));
+                // distributions are indexed by the symbol numbers of this predictor's log
+                String symbol = symbols.getSymbol(log.getNumericalLogEntry(c, s));
+                int target = this.log.getSymbolTable().getNumber(symbol);
+                logCaseProbability += Utilities.log2((target < 0) ? 0.0 : cursor.getDistributionOverNextSymbol()[target]);
+                if (s < N - 1)
+                    cursor.advance(symbol);
             }
 
-            ArrayList<String> historyUpToS = new ArrayList<String>();
-            for (int s = 0; s < N; s++) {
-                String currentTarget = currentCaseSymbolic.get(s);
-                String[] history = new String[historyUpToS.size()];
-                for (int i = 0; i < historyUpToS.size(); i++)
-                    history[i] = historyUpToS.get(i);
-                double probOfTarget = this.predictProbability(history)[log.getSymbolToNumberMapping().get(currentTarget)];
-                CaseProbability = CaseProbability * probOfTarget;
-                historyUpToS.add(currentTarget);
-            }
-
-            crossEntropy -= (caseMultiplicity / (double) (numberOfCases)) * Framework.Utils.Utilities.log2(CaseProbability);
-
+            crossEntropy -= (caseMultiplicity / (double) (numberOfCases)) * logCaseProbability;
         }
 
         return crossEntropy;
@@ -30,13 +30,17 @@
 
 package Framework.Predictors;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Set;
 
 import Framework.Models.Log.NonRedundantLog;
+import Framework.Models.Log.SymbolTable;
+import Framework.Utils.Renderable;
+import Framework.Utils.Utilities;
 
-public class PredictorEvaluator {
+public class PredictorEvaluator implements Renderable {
 
     public HashMap<Predictor, Double> averageAccuracy = new HashMap<Predictor, Double>();
     public HashMap<Predictor, ArrayList<Double>> accuraciesByPosition = new HashMap<Predictor, ArrayList<Double>>();
@@ -74,30 +78,75 @@ public class PredictorEvaluator {
             }
         }
 
+        // a single sweep over the cases: each predictor walks every case once with a cursor
+        // all metrics are accumulated from the predictions made along the way
         int maxLength = testLog.getLengthOfLongestCase();
-        // iterate through the log by position
-        for (int n = 1; n < maxLength; n++) {
-            PredictionDataset data = new PredictionDataset(testLog, n);
-            // record size at this position and update sizes for symbols
-            sizeByPosition.add(data.size);
-            HashMap<String, Integer> currentSymbolCounts = data.getTargetSymbolCounts();
-            for (String symbol : currentSymbolCounts.keySet())
-                positivesBySymbol.put(symbol, positivesBySymbol.get(symbol) + currentSymbolCounts.get(symbol));
-            this.sizeTotal += data.size;
-
-            // iterate the predictors to generate their scores
-            for (Predictor pred : predictors) {
-                // score accuracy for this predictor and add value to the list
-                accuraciesByPosition.get(pred).add(pred.scoreAccuracy(data));
-                // count true positives / false positives
-                HashMap<String, Integer> currentTruePositivesBySymbol = pred.getTruePositivesBySymbol(data);
-                for (String symbol : currentTruePositivesBySymbol.keySet())
-                    truePositivesBySymbol.get(pred).put(symbol, truePositivesBySymbol.get(pred).get(symbol) + currentTruePositivesBySymbol.get(symbol));
-                HashMap<String, Integer> currentFalsePositivesBySymbol = pred.getFalsePositivesBySymbol(data);
-                for (String symbol : currentFalsePositivesBySymbol.keySet())
-                    falsePositivesBySymbol.get(pred).put(symbol, falsePositivesBySymbol.get(pred).get(symbol) + currentFalsePositivesBySymbol.get(symbol));
+        int numberOfCases = testLog.getNumberOfCases();
+        SymbolTable testSymbols = testLog.getSymbolTable();
+        int[] sizes = new int[Math.max(maxLength - 1, 0)];
+        int[][] hits = new int[predictors.size()][sizes.length];
+        double[] crossEntropy = new double[predictors.size()];
+        PredictionCursor[] cursors = new PredictionCursor[predictors.size()];
+        for (int p = 0; p < predictors.size(); p++)
+            cursors[p] = predictors.get(p).createCursor();
+
+        for (int c = 0; c < testLog.getNumberOfUniqueCases(); c++) {
+            int N = testLog.getLengthOfCase(c);
+            int caseMultiplicity = testLog.getCaseMultiplicity(c);
+            String[] currentCase = new String[N];
+            for (int s = 0; s < N; s++)
+                currentCase[s] = testSymbols.getSymbol(testLog.getNumericalLogEntry(c, s));
+
+            // record sizes by position and by symbol (the first symbol of a case is never a target)
+            for (int n = 1; n < N; n++) {
+                sizes[n - 1] += caseMultiplicity;
+                positivesBySymbol.put(currentCase[n], positivesBySymbol.get(currentCase[n]) + caseMultiplicity);
             }
+
+            for (int p = 0; p < predictors.size(); p++) {
+                Predictor pred = predictors.get(p);
+                PredictionCursor cursor = cursors[p];
+                cursor.reset();
+                double logCaseProbability = 0.0;
+                for (int s = 0; s < N; s++) {
+                    if (s > 0)
+                        cursor.advance(currentCase[s - 1]);
+                    double[] symbolDistribution = cursor.getDistributionOverNextSymbol();
+                    // distributions are indexed by the symbol numbers of the predictor's log
+                    int target = pred.log.getSymbolTable().getNumber(currentCase[s]);
+                    double probOfTarget = (target < 0) ? 0.0 : symbolDistribution[target];
+                    logCaseProbability += Utilities.log2(probOfTarget);
+                    if (s == 0)
+                        continue;
+
+                    // score the prediction and count true positives / false positives
+                    String prediction = pred.log.getSymbolTable().getSymbol(Predictor.indexOfMaximum(symbolDistribution));
+                    HashMap<String, Integer> counts = null;
+                    if (prediction.equals(currentCase[s])) {
+                        hits[p][s - 1] += caseMultiplicity;
+                        counts = truePositivesBySymbol.get(pred);
+                    } else {
+                        counts = falsePositivesBySymbol.get(pred);
+                    }
+                    if (counts.containsKey(prediction))
+                        counts.put(prediction, counts.get(prediction) + caseMultiplicity);
+                }
+
+                crossEntropy[p] -= (((double) caseMultiplicity) / (double) (numberOfCases)) * logCaseProbability;
+            }
+        }
+
+        for (int n = 0; n < sizes.length; n++) {
+            sizeByPosition.add(sizes[n]);
+            this.sizeTotal += sizes[n];
+        }
+        for (int p = 0; p < predictors.size(); p++) {
+            Predictor pred = predictors.get(p);
+            for (int n = 0; n < sizes.length; n++)
+                accuraciesByPosition.get(pred).add(((double) hits[p][n]) / ((double) sizes[n]));
+            this.crossEntropies.put(pred, crossEntropy[p]);
         }
+
         // calculate final scores for each symbol
         for (Predictor pred : predictors)
             for (String symbol : allSymbols) {
@@ -145,9 +194,6 @@ public class PredictorEvaluator {
                 denominator += 1;
             }
             this.averageSpecitivity.put(pred, numerator / denominator);
-
-            // cross entropies
-            this.crossEntropies.put(pred, pred.getCrossEntropy(testLog));
         }
 
     }
@@ -180,41 +226,57 @@ public class PredictorEvaluator {
     }
 
     public String toString() {
-        StringBuffer result = new StringBuffer();
+        return Utilities.render(this, -1);
+    }
 
-        result.append(String.format("Total Size = %d \n", this.sizeTotal));
+    // writes the results of all predictors. "limit" bounds the number of positions and symbols listed per predictor
+    public void render(Appendable out, int limit) throws IOException {
+        out.append(String.format("Total Size = %d \n", this.sizeTotal));
 
         for (Predictor pred : predictors) {
 
-            result.append(String.format("%15s Accs (%4.2f) by Position: ", pred.name, this.averageAccuracy.get(pred)));
-            for (int i = 0; i < accuraciesByPosition.get(pred).size(); i++)
-                result.append(String.format("%4.2f | ", accuraciesByPosition.get(pred).get(i)));
-            result.append("\n");
+            out.append(String.format("%15s Accs (%4.2f) by Position: ", pred.name, this.averageAccuracy.get(pred)));
+            ArrayList<Double> accuracies = accuraciesByPosition.get(pred);
+            for (int i = 0; i < accuracies.size(); i++) {
+                if ((limit >= 0) && (i >= limit)) {
+                    out.append("... | ");
+                    break;
+                }
+                out.append(String.format("%4.2f | ", accuracies.get(i)));
+            }
+            out.append('\n');
         }
 
         for (Predictor pred : predictors) {
 
-            result.append(String.format("%15s Sensitivity (%4.2f) by Symbol: ", pred.name, this.averageSensitivity.get(pred)));
-            for (String symbol : sensitivityBySymbol.get(pred).keySet())
-                result.append(String.format("%s : %4.2f | ", symbol, sensitivityBySymbol.get(pred).get(symbol)));
-            result.append("\n");
+            out.append(String.format("%15s Sensitivity (%4.2f) by Symbol: ", pred.name, this.averageSensitivity.get(pred)));
+            renderBySymbol(out, sensitivityBySymbol.get(pred), limit);
+            out.append('\n');
         }
 
         for (Predictor pred : predictors) {
 
-            result.append(String.format("%15s Specitivity (%4.2f) by Symbol: ", pred.name, this.averageSpecitivity.get(pred)));
-            for (String symbol : specitivityBySymbol.get(pred).keySet())
-                result.append(String.format("%s : %4.2f | ", symbol, specitivityBySymbol.get(pred).get(symbol)));
-            result.append("\n");
+            out.append(String.format("%15s Specitivity (%4.2f) by Symbol: ", pred.name, this.averageSpecitivity.get(pred)));
+            renderBySymbol(out, specitivityBySymbol.get(pred), limit);
+            out.append('\n');
         }
 
-        result.append("\n");
+        out.append('\n');
         for (Predictor pred : predictors) {
-            result.append(pred.name + " CE: " + this.crossEntropies.get(pred) + "\n");
+            out.append(pred.name).append(" CE: ").append(String.valueOf(this.crossEntropies.get(pred))).append('\n');
         }
+    }
 
-
-        return result.toString();
+    private static void renderBySymbol(Appendable out, HashMap<String, Double> values, int limit) throws IOException {
+        int written = 0;
+        for (String symbol : values.keySet()) {
+            if ((limit >= 0) && (written >= limit)) {
+                out.append("... | ");
+                break;
+            }
+            out.append(String.format("%s : %4.2f | ", symbol, values.get(symbol)));
+            written++;
+        }
     }
 
 }
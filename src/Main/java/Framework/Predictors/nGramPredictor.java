@@ -30,128 +30,229 @@
 
 package Framework.Predictors;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 
 import Framework.Models.Log.NonRedundantLog;
+import Framework.Models.Log.SymbolTable;
+import Framework.Utils.LongIntHashMap;
 
+// predicts the next symbol from the distribution of symbols that followed the last n symbols in the log
+// contexts are stored in a trie over symbol numbers that goes backwards in time (the children of a node extend its
+// context by one earlier symbol), so contexts of all lengths up to n share their nodes
 public class nGramPredictor extends Predictor {
 
-    ArrayList<HashMap<String, double[]>> nGrams = new ArrayList<HashMap<String, double[]>>();
     double[] intitalDistribution = null;
     int n = -1;
 
+    // context trie (node 0 is the empty context). for each node: its parent, the symbol on the edge leading to it
+    // and the length of its context
+    int[] parents;
+    int[] nodeSymbols;
+    int[] depths;
+    int numberOfNodes;
+    // edges, the key combines parent node and symbol (see LongIntHashMap.key)
+    LongIntHashMap edges;
+    // next-symbol counts of each node in compressed form: the symbols following the context of node k and their
+    // counts are stored from followerStart[k] to followerStart[k + 1] - 1. totals holds the sum of the counts
+    int[] followerStart;
+    int[] followerSymbols;
+    int[] followerCounts;
+    int[] totals;
+
     public nGramPredictor(NonRedundantLog log, String name) {
         super(log, name);
     }
 
     public void createPredictor(int n) {
         this.n = n;
-        int symbolNum = log.getNumberOfUniqueSymbols();
-        ArrayList<HashMap<String, int[]>> nGramCounters = new ArrayList<HashMap<String, int[]>>();
-        int[] intitalDistributionCounter = new int[symbolNum];
-        for (int i = 0; i < symbolNum; i++)
-            intitalDistributionCounter[i] = 0;
-
-        // create nGrams up to n-value given to this function
-        for (int i = 1; i <= n; i++) {
-
-            HashMap<String, int[]> currentnGramCounter = new HashMap<String, int[]>();
-
-            // iterate unique cases
-            for (int c = 0; c < log.getNumberOfUniqueCases(); c++) {
-                int caseMultiplicity = log.getCaseMultiplicity(c);
-                ArrayList<Integer> currentCase = log.getCase(c);
-                intitalDistributionCounter[currentCase.get(0)] += caseMultiplicity;
-                // get all nGrams and count the symbols that follow on them
-                for (int e = i; e < currentCase.size(); e++) {
-                    String[] featureSymbols = new String[i];
-                    for (int j = i; j > 0; j--) {
-                        featureSymbols[i - j] = log.getNumberToSymbolMapping().get(currentCase.get(e - j));
+
+        int expectedNodes = Math.max(16, log.getNumberOfUniqueSymbols() * n * 4);
+        this.parents = new int[expectedNodes];
+        this.nodeSymbols = new int[expectedNodes];
+        this.depths = new int[expectedNodes];
+        this.edges = new LongIntHashMap(expectedNodes);
+        this.numberOfNodes = 0;
+        this.addNode(-1, -1);
+
+        // count the symbols following each context of length 1 to n. (node, symbol) pairs are numbered in order of
+        // appearance and collected in pairNodes, pairSymbols and pairCounts
+        LongIntHashMap pairs = new LongIntHashMap(expectedNodes);
+        int[] pairNodes = new int[expectedNodes];
+        int[] pairSymbols = new int[expectedNodes];
+        int[] pairCounts = new int[expectedNodes];
+        int numberOfPairs = 0;
+
+        // iterate unique cases
+        for (int c = 0; c < log.getNumberOfUniqueCases(); c++) {
+            int caseMultiplicity = log.getCaseMultiplicity(c);
+            int[] currentCase = log.getCaseAsArray(c);
+            for (int e = 1; e < currentCase.length; e++) {
+                int target = currentCase[e];
+                int node = 0;
+                // walk backwards through the context and count the target for each context length
+                for (int j = 1; (j <= n) && (j <= e); j++) {
+                    int symbol = currentCase[e - j];
+                    int child = this.edges.get(LongIntHashMap.key(node, symbol), -1);
+                    if (child < 0) {
+                        child = this.addNode(node, symbol);
+                        this.edges.put(LongIntHashMap.key(node, symbol), child);
                     }
-                    String feature = Arrays.toString(featureSymbols);
-                    int target = currentCase.get(e);
-                    if (currentnGramCounter.containsKey(feature))
-                        currentnGramCounter.get(feature)[target] += caseMultiplicity;
-                    else {
-                        int[] tmp = new int[symbolNum];
-                        for (int tmpI = 0; tmpI < symbolNum; tmpI++)
-                            tmp[tmpI] = 0;
-                        tmp[target] = caseMultiplicity;
-                        currentnGramCounter.put(feature, tmp);
+                    node = child;
+
+                    int pair = pairs.get(LongIntHashMap.key(node, target), -1);
+                    if (pair < 0) {
+                        if (numberOfPairs == pairNodes.length) {
+                            pairNodes = Arrays.copyOf(pairNodes, numberOfPairs * 2);
+                            pairSymbols = Arrays.copyOf(pairSymbols, numberOfPairs * 2);
+                            pairCounts = Arrays.copyOf(pairCounts, numberOfPairs * 2);
+                        }
+                        pair = numberOfPairs++;
+                        pairs.put(LongIntHashMap.key(node, target), pair);
+                        pairNodes[pair] = node;
+                        pairSymbols[pair] = target;
+                        pairCounts[pair] = 0;
                     }
+                    pairCounts[pair] += caseMultiplicity;
                 }
             }
-            nGramCounters.add(currentnGramCounter);
         }
 
-        // use counters to create distributions
-        int intitalSumTmp = 0;
-        intitalDistribution = new double[symbolNum];
-        for (int i = 0; i < symbolNum; i++) {
-            intitalSumTmp += intitalDistributionCounter[i];
-            intitalDistribution[i] = 0;
-        }
-        for (int i = 0; i < symbolNum; i++)
-            intitalDistribution[i] = ((double) intitalDistributionCounter[i]) / ((double) intitalSumTmp);
-
-        for (HashMap<String, int[]> nGramCounter : nGramCounters) {
-            HashMap<String, double[]> currentnGram = new HashMap<String, double[]>();
-            for (String feature : nGramCounter.keySet()) {
-                double[] dist = new double[symbolNum];
-                int[] counter = nGramCounter.get(feature);
-                int totalSum = 0;
-                for (int i = 0; i < symbolNum; i++)
-                    totalSum += counter[i];
-                for (int i = 0; i < symbolNum; i++)
-                    dist[i] = ((double) counter[i]) / ((double) totalSum);
-                currentnGram.put(feature, dist);
-            }
-            this.nGrams.add(currentnGram);
+        // sort the pairs by node (counting sort)
+        this.followerStart = new int[this.numberOfNodes + 1];
+        for (int pair = 0; pair < numberOfPairs; pair++)
+            this.followerStart[pairNodes[pair] + 1]++;
+        for (int node = 0; node < this.numberOfNodes; node++)
+            this.followerStart[node + 1] += this.followerStart[node];
+        this.followerSymbols = new int[numberOfPairs];
+        this.followerCounts = new int[numberOfPairs];
+        this.totals = new int[this.numberOfNodes];
+        int[] position = Arrays.copyOf(this.followerStart, this.numberOfNodes);
+        for (int pair = 0; pair < numberOfPairs; pair++) {
+            int node = pairNodes[pair];
+            this.followerSymbols[position[node]] = pairSymbols[pair];
+            this.followerCounts[position[node]] = pairCounts[pair];
+            position[node]++;
+            this.totals[node] += pairCounts[pair];
         }
+
+        // the initial distribution is the distribution of first symbols in the log
+        intitalDistribution = log.getProfile().getStartDistribution();
     }
 
     @Override
     public double[] predictProbability(String[] history) {
-
-        HashMap<String, double[]> nGram = null;
-        String[] feature = null;
-        if (history.length > n) {
-            nGram = this.nGrams.get(n - 1);
-            feature = new String[n];
-        } else if (history.length == 0) {
+        if (history.length == 0)
             return this.intitalDistribution;
-        } else {
-            nGram = this.nGrams.get(history.length - 1);
-            feature = new String[history.length];
+
+        // convert the relevant part of the history (unknown symbols lead to the uniform distribution)
+        SymbolTable symbols = this.log.getSymbolTable();
+        int length = Math.min(history.length, n);
+        int[] context = new int[length];
+        for (int i = 0; i < length; i++)
+            context[i] = symbols.getNumber(history[history.length - length + i]);
+
+        double[] prediction = new double[log.getNumberOfUniqueSymbols()];
+        this.predictProbability(context, length, prediction);
+        return prediction;
+    }
+
+    // writes the distribution over the next symbol into "out" without allocating memory
+    // history holds symbol numbers of the log, only its first "length" entries are used (the last n of them count)
+    public void predictProbability(int[] history, int length, double[] out) {
+        if (length == 0) {
+            System.arraycopy(this.intitalDistribution, 0, out, 0, this.intitalDistribution.length);
+            return;
+        }
+        int node = this.findContext(history, length);
+        if (node < 0) {
+            Arrays.fill(out, 0, log.getNumberOfUniqueSymbols(), 1.0 / ((double) log.getNumberOfUniqueSymbols()));
+            return;
         }
-        for (int i = 0; i < feature.length; i++) {
-            feature[feature.length - 1 - i] = history[history.length - 1 - i];
+        Arrays.fill(out, 0, log.getNumberOfUniqueSymbols(), 0.0);
+        for (int i = this.followerStart[node]; i < this.followerStart[node + 1]; i++)
+            out[this.followerSymbols[i]] = ((double) this.followerCounts[i]) / ((double) this.totals[node]);
+    }
+
+    // returns the node of the context formed by the last (at most n) symbols of the history, -1 if it was never seen
+    int findContext(int[] history, int length) {
+        int node = 0;
+        for (int j = 1; (j <= n) && (j <= length) && (node >= 0); j++) {
+            int symbol = history[length - j];
+            node = (symbol < 0) ? -1 : this.edges.get(LongIntHashMap.key(node, symbol), -1);
         }
+        return node;
+    }
+
+    // predictions only depend on the last n symbols
+    @Override
+    public int getMaximumContextLength() {
+        return this.n;
+    }
+
+    // cursor that only keeps the last n symbols of the history and predicts without allocating memory
+    @Override
+    public PredictionCursor createCursor() {
+        return new PredictionCursor() {
+            // the last n symbol numbers (-1 for unknown symbols) and the length of the history
+            private int[] window = new int[n];
+            private int length = 0;
+            private int[] context = new int[n];
+            // the returned distribution, overwritten by each call
+            private double[] prediction = new double[log.getNumberOfUniqueSymbols()];
 
-        double[] prediction = nGram.get(Arrays.toString(feature));
-        if (prediction == null) {
-            prediction = new double[log.getNumberOfUniqueSymbols()];
-            for (int i = 0; i < log.getNumberOfUniqueSymbols(); i++) {
-                prediction[i] = 1.0 / ((double) log.getNumberOfUniqueSymbols());
+            public void reset() {
+                this.length = 0;
             }
-        }
 
-        return prediction;
+            public void advance(String symbol) {
+                this.window[this.length % n] = log.getSymbolTable().getNumber(symbol);
+                this.length++;
+            }
+
+            public double[] getDistributionOverNextSymbol() {
+                if (this.length == 0)
+                    return intitalDistribution;
+                int contextLength = Math.min(this.length, n);
+                for (int i = 0; i < contextLength; i++)
+                    this.context[contextLength - 1 - i] = this.window[(this.length - 1 - i) % n];
+                predictProbability(this.context, contextLength, this.prediction);
+                return this.prediction;
+            }
+        };
     }
 
     public void printnGrams() {
-        for (HashMap<String, double[]> nGram : this.nGrams) {
-            for (String key : nGram.keySet()) {
-                String tmp = key + " -> ";
-                double[] targetDistribution = nGram.get(key);
-                for (int i = 0; i < targetDistribution.length; i++)
-                    tmp += String.format("%s : %f | ", log.getNumberToSymbolMapping().get(i), targetDistribution[i]);
-                System.out.println(tmp);
+        SymbolTable symbols = log.getSymbolTable();
+        for (int node = 1; node < this.numberOfNodes; node++) {
+            // the context in forward order
+            String[] featureSymbols = new String[this.depths[node]];
+            int current = node;
+            for (int i = 0; i < featureSymbols.length; i++) {
+                featureSymbols[i] = symbols.getSymbol(this.nodeSymbols[current]);
+                current = this.parents[current];
             }
+            String tmp = Arrays.toString(featureSymbols) + " -> ";
+            double[] targetDistribution = new double[log.getNumberOfUniqueSymbols()];
+            for (int i = this.followerStart[node]; i < this.followerStart[node + 1]; i++)
+                targetDistribution[this.followerSymbols[i]] = ((double) this.followerCounts[i]) / ((double) this.totals[node]);
+            for (int i = 0; i < targetDistribution.length; i++)
+                tmp += String.format("%s : %f | ", symbols.getSymbol(i), targetDistribution[i]);
+            System.out.println(tmp);
         }
     }
 
+    private int addNode(int parent, int symbol) {
+        if (this.numberOfNodes == this.parents.length) {
+            int capacity = this.parents.length * 2;
+            this.parents = Arrays.copyOf(this.parents, capacity);
+            this.nodeSymbols = Arrays.copyOf(this.nodeSymbols, capacity);
+            this.depths = Arrays.copyOf(this.depths, capacity);
+        }
+        int node = this.numberOfNodes++;
+        this.parents[node] = parent;
+        this.nodeSymbols[node] = symbol;
+        this.depths[node] = (parent < 0) ? 0 : this.depths[parent] + 1;
+        return node;
+    }
 
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2014, Dominic Breuker
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package Framework.Utils;
+
+import java.util.Arrays;
+
+// hash map from long keys to int values without boxing (open addressing with linear probing)
+// entries cannot be removed
+public class LongIntHashMap {
+
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private int[] values;
+    // marks the slots that are in use
+    private boolean[] used;
+    private int size = 0;
+
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    // creates a map able to hold the given number of entries without resizing
+    public LongIntHashMap(int expectedSize) {
+        int tableSize = 1;
+        while (tableSize < 2 * Math.max(expectedSize, 8))
+            tableSize <<= 1;
+        this.keys = new long[tableSize];
+        this.values = new int[tableSize];
+        this.used = new boolean[tableSize];
+    }
+
+    // combines two ints into one key (e.g., a node and a symbol for the edges of a trie)
+    public static long key(int high, int low) {
+        return (((long) high) << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    // returns the value stored for the key, or defaultValue if there is none
+    public int get(long key, int defaultValue) {
+        int slot = this.findSlot(key);
+        return this.used[slot] ? this.values[slot] : defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        return this.used[this.findSlot(key)];
+    }
+
+    // stores a value for the key, replacing any previous value
+    public void put(long key, int value) {
+        int slot = this.findSlot(key);
+        if (this.used[slot]) {
+            this.values[slot] = value;
+            return;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.used[slot] = true;
+        this.size++;
+
+        // keep load factor below 0.5
+        if (2 * this.size > this.keys.length)
+            this.rehash(this.keys.length * 2);
+    }
+
+    // adds delta to the value stored for the key (0 if there is none) and returns the new value
+    public int add(long key, int delta) {
+        int slot = this.findSlot(key);
+        if (this.used[slot]) {
+            this.values[slot] += delta;
+            return this.values[slot];
+        }
+        this.put(key, delta);
+        return delta;
+    }
+
+    // adds the values of all entries of another map to the values stored here
+    public void addAll(LongIntHashMap other) {
+        for (int i = 0; i < other.keys.length; i++)
+            if (other.used[i])
+                this.add(other.keys[i], other.values[i]);
+    }
+
+    // returns the keys of all entries (in no particular order)
+    public long[] getKeys() {
+        long[] result = new long[this.size];
+        int index = 0;
+        for (int i = 0; i < this.keys.length; i++)
+            if (this.used[i])
+                result[index++] = this.keys[i];
+        return result;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    // returns the slot containing the key or the empty slot where it should be inserted
+    private int findSlot(long key) {
+        int mask = this.keys.length - 1;
+        int slot = mix(key) & mask;
+        while (this.used[slot] && (this.keys[slot] != key))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void rehash(int tableSize) {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        boolean[] oldUsed = this.used;
+        this.keys = new long[tableSize];
+        this.values = new int[tableSize];
+        this.used = new boolean[tableSize];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = this.findSlot(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+                this.used[slot] = true;
+            }
+        }
+    }
+
+    // spreads all bits of the key into the bits used for addressing
+    private static int mix(long key) {
+        long hash = key * HASH_MULTIPLIER;
+        hash ^= (hash >>> 32);
+        hash ^= (hash >>> 16);
+        return (int) hash;
+    }
+
+    // removes all entries (keeps the capacity)
+    public void clear() {
+        Arrays.fill(this.used, false);
+        this.size = 0;
+    }
+
+}
@@ -30,8 +30,8 @@
 
 package Framework.Utils;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
@@ -53,6 +53,18 @@ public class Utilities {
             return b + Math.log(1 + Math.exp(a - b));
     }
 
+    // renders an object into a string, writing at most "limit" entries (all if negative)
+    public static String render(Renderable renderable, int limit) {
+        StringBuilder result = new StringBuilder();
+        try {
+            renderable.render(result, limit);
+        } catch (IOException e) {
+            // cannot happen when writing to a StringBuilder
+            throw new IllegalStateException(e);
+        }
+        return result.toString();
+    }
+
     public static double log2(double a) {
         return Math.log(a) / Math.log(2);
     }
@@ -87,77 +99,105 @@ public class Utilities {
     }
 
     // creates a log with validationSet attached. Uses "learningFraction" for learning, rest for validation
+    // cases are assigned randomly, so the sizes of both logs match the fractions only approximately
     public static NonRedundantLog createTrainValidationLogs(String name, ArrayList<ArrayList<String>> samples, float learningFraction) {
+        double[] fractions = {learningFraction, 1.0 - learningFraction};
 
-        // random permutation
-        Collections.shuffle(samples);
-
-        int N = samples.size();
-        int learningCases = Math.round(N * learningFraction);
-
-        // create mapping of symbols and numbers
-        HashMap<String, Integer> sym2num = Utilities.createNumberSymbolMapping(samples, NonRedundantLog.TERMINATION_SYMBOL);
-
+        // create one log and split it into views
+        NonRedundantLog[] logs = new NonRedundantLog(name, samples).split(fractions, new Random());
+        logs[0].setValidationLog(logs[1]);
 
-        // get learning samples
-        ArrayList<ArrayList<String>> learningSamples = new ArrayList<ArrayList<String>>();
-        for (int i = 0; i < learningCases; i++) {
-            learningSamples.add(samples.get(i));
-        }
-        // get validation samples
-        ArrayList<ArrayList<String>> validationSamples = new ArrayList<ArrayList<String>>();
-        for (int i = learningCases; i < N; i++) {
-            validationSamples.add(samples.get(i));
-        }
-
-        // create logs
-        NonRedundantLog result = new NonRedundantLog(name, learningSamples, sym2num);
-        NonRedundantLog validationLog = new NonRedundantLog(name, validationSamples, sym2num);
-        result.setValidationLog(validationLog);
-
-        return result;
+        return logs[0];
     }
 
     // creates a log with validation and test set attached. fractions are given by the fractions-array (learning / validation / testing), must sum to one
+    // cases are assigned randomly, so the sizes of the logs match the fractions only approximately
     public static NonRedundantLog createTrainValidationTestLogs(String name, ArrayList<ArrayList<String>> samples, float[] fractions) {
+        double[] splitFractions = {fractions[0], fractions[1], 1.0 - fractions[0] - fractions[1]};
 
-        // random permutation
-        Collections.shuffle(samples);
-
-        int N = samples.size();
-        int learningCases = Math.round(N * fractions[0]);
-        int validationCases = Math.round(N * fractions[1]);
-
-        // create mapping of symbols and numbers
-        HashMap<String, Integer> sym2num = Utilities.createNumberSymbolMapping(samples, NonRedundantLog.TERMINATION_SYMBOL);
+        // create one log and split it into views
+        NonRedundantLog[] logs = new NonRedundantLog(name, samples).split(splitFractions, new Random());
+        logs[0].setValidationLog(logs[1]);
+        logs[0].setTestLog(logs[2]);
 
+        return logs[0];
+    }
 
-        // get learning samples
-        ArrayList<ArrayList<String>> learningSamples = new ArrayList<ArrayList<String>>();
-        for (int i = 0; i < learningCases; i++) {
-            learningSamples.add(samples.get(i));
-        }
-        // get validation samples
-        ArrayList<ArrayList<String>> validationSamples = new ArrayList<ArrayList<String>>();
-        for (int i = learningCases; i < learningCases + validationCases; i++) {
-            validationSamples.add(samples.get(i));
-        }
-        // get test samples
-        ArrayList<ArrayList<String>> testSamples = new ArrayList<ArrayList<String>>();
-        for (int i = learningCases + validationCases; i < N; i++) {
-            testSamples.add(samples.get(i));
+    // draws from a binomial distribution with n trials and success probability p (exact)
+    // few expected successes are counted by geometric waiting times, otherwise the trials are split recursively
+    // by the order statistics of the uniforms (Knuth, TAOCP vol. 2, 3.4.1), which takes O(log n) beta draws
+    public static int sampleBinomial(int n, double p, Random random) {
+        if ((n <= 0) || (p <= 0.0))
+            return 0;
+        if (p >= 1.0)
+            return n;
+
+        int result = 0;
+        boolean flip = p > 0.5;
+        double q = flip ? 1.0 - p : p;
+        if (n * q < 16.0) {
+            // sum geometric waiting times between successes (kept as double, so they cannot overflow)
+            double logQ = Math.log(1.0 - q);
+            double position = 0.0;
+            while (true) {
+                position += Math.floor(Math.log(1.0 - random.nextDouble()) / logQ) + 1.0;
+                if (position > n)
+                    break;
+                result++;
+            }
+            return flip ? n - result : result;
         }
 
-        // create logs
-        NonRedundantLog result = new NonRedundantLog(name, learningSamples, sym2num);
-        NonRedundantLog validationLog = new NonRedundantLog(name, validationSamples, sym2num);
-        NonRedundantLog testLog = new NonRedundantLog(name, testSamples, sym2num);
-        result.setValidationLog(validationLog);
-        result.setTestLog(testLog);
+        while (n > 64) {
+            // x is the i-th smallest of the n uniforms deciding the trials
+            int i = 1 + n / 2;
+            double x = sampleBeta(i, n + 1 - i, random);
+            if (x >= p) {
+                // the i-th trial and all larger ones fail, the smaller ones are uniform on [0, x)
+                n = i - 1;
+                p = p / x;
+            } else {
+                // the i smallest trials succeed, the larger ones are uniform on (x, 1]
+                result += i;
+                n = n - i;
+                p = (p - x) / (1.0 - x);
+            }
+        }
 
+        // count successes of the individual trials
+        for (int i = 0; i < n; i++)
+            if (random.nextDouble() < p)
+                result++;
         return result;
     }
 
+    // draws from a beta distribution with parameters a, b >= 1
+    private static double sampleBeta(double a, double b, Random random) {
+        double x = sampleGamma(a, random);
+        double y = sampleGamma(b, random);
+        return x / (x + y);
+    }
+
+    // draws from a gamma distribution with shape >= 1 and scale 1 (Marsaglia and Tsang)
+    private static double sampleGamma(double shape, Random random) {
+        double d = shape - 1.0 / 3.0;
+        double c = 1.0 / Math.sqrt(9.0 * d);
+        while (true) {
+            double x;
+            double v;
+            do {
+                x = random.nextGaussian();
+                v = 1.0 + c * x;
+            } while (v <= 0.0);
+            v = v * v * v;
+            double u = random.nextDouble();
+            if (u < 1.0 - 0.0331 * x * x * x * x)
+                return d * v;
+            if (Math.log(u) < 0.5 * x * x + d * (1.0 - v + Math.log(v)))
+                return d * v;
+        }
+    }
+
     // returns the unqiue symbols in this sample
     public static HashSet<String> getUniqueSymbols(ArrayList<ArrayList<String>> samples) {
         HashSet<String> symbols = new HashSet<String>();